@@ -0,0 +1,9 @@
+#!/bin/bash
+
+set -e
+
+mvn clean install -DskipTests
+
+(cd benchmarks && mvn clean package)
+
+java --enable-preview -jar ./benchmarks/target/benchmarks.jar "$@"
@@ -0,0 +1,56 @@
+package com.albertoventurini.graphs.bookreviews.benchmarks;
+
+import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/** Parses each of the three BX files on its own, in every read mode. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class CsvParseBenchmark {
+
+    @Param({"STREAMING", "MEMORY_MAPPED", "PARALLEL_MEMORY_MAPPED"})
+    public BookReviewsCsvParser.ReadMode readMode;
+
+    @Param({"false", "true"})
+    public boolean poolStrings;
+
+    private BookReviewsCsvParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = new BookReviewsCsvParser(readMode, ForkJoinPool.commonPool(), poolStrings);
+    }
+
+    @Benchmark
+    public void parseBooks(final Dataset dataset, final Blackhole blackhole) {
+        parser.parseBooks(dataset.bookFile(), blackhole::consume);
+    }
+
+    @Benchmark
+    public void parseUsers(final Dataset dataset, final Blackhole blackhole) {
+        parser.parseUsers(dataset.userFile(), blackhole::consume);
+    }
+
+    @Benchmark
+    public void parseBookRatings(final Dataset dataset, final Blackhole blackhole) {
+        parser.parseBookRatings(dataset.bookRatingFile(), blackhole::consume);
+    }
+}
@@ -0,0 +1,91 @@
+package com.albertoventurini.graphs.bookreviews.benchmarks;
+
+import com.albertoventurini.graphs.bookreviews.generator.BxDatasetGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * A synthetic BX dataset, generated into a temporary directory once per trial.
+ * The scale parameters can be overridden from the command line, e.g. {@code -p ratings=1000000}.
+ */
+@State(Scope.Benchmark)
+public class Dataset {
+
+    private static final long SEED = 42;
+
+    /** Number of authors and publishers relative to the number of books, roughly as in the BX sample. */
+    private static final int AUTHORS_PER_BOOK_PERCENT = 38;
+    private static final int PUBLISHERS_PER_BOOK_PERCENT = 6;
+
+    @Param("10000")
+    public int users;
+
+    @Param("20000")
+    public int books;
+
+    @Param("100000")
+    public int ratings;
+
+    @Param("0.9")
+    public double bookSkew;
+
+    @Param("1.1")
+    public double authorSkew;
+
+    @Param("1.0")
+    public double locationSkew;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        directory = Files.createTempDirectory("bx-benchmark");
+        final BxDatasetGenerator.Settings settings = new BxDatasetGenerator.Settings(
+                users,
+                books,
+                ratings,
+                (int) Math.max(1, (long) books * AUTHORS_PER_BOOK_PERCENT / 100),
+                (int) Math.max(1, (long) books * PUBLISHERS_PER_BOOK_PERCENT / 100),
+                bookSkew,
+                authorSkew,
+                locationSkew,
+                SEED);
+        new BxDatasetGenerator(settings).write(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        try (final Stream<Path> paths = Files.walk(directory)) {
+            for (final Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public String bookFile() {
+        return directory.resolve(BxDatasetGenerator.BOOK_FILE).toString();
+    }
+
+    public String bookRatingFile() {
+        return directory.resolve(BxDatasetGenerator.BOOK_RATING_FILE).toString();
+    }
+
+    public String userFile() {
+        return directory.resolve(BxDatasetGenerator.USER_FILE).toString();
+    }
+
+    /** A file in the dataset directory, for benchmarks that write derived data such as snapshots. */
+    public Path resolve(final String fileName) {
+        return directory.resolve(fileName);
+    }
+}
@@ -0,0 +1,76 @@
+package com.albertoventurini.graphs.bookreviews.benchmarks;
+
+import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
+import com.albertoventurini.graphs.bookreviews.generator.BxDatasetGenerator;
+import com.albertoventurini.graphs.bookreviews.graph.BookReviewsGraph;
+import com.albertoventurini.graphs.bookreviews.graph.BookReviewsGraphLoader;
+import com.albertoventurini.graphs.bookreviews.graph.Graph;
+import com.albertoventurini.graphs.bookreviews.graph.Queries;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the queries in {@link Queries} that take a pool, against a graph built and frozen once per trial.
+ * Compare with the sequential forms in {@link QueryBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class ParallelQueryBenchmark {
+
+    @Param({"HEAP", "OFF_HEAP"})
+    public Graph.EdgeStorage storage;
+
+    /** Parallelism of the pool the queries run on */
+    @Param("4")
+    public int threads;
+
+    private BookReviewsGraph graph;
+    private ForkJoinPool pool;
+    private String state;
+    private String country;
+
+    @Setup(Level.Trial)
+    public void setUp(final Dataset dataset) {
+        graph = new BookReviewsGraphLoader(new BookReviewsCsvParser())
+                .load(dataset.bookFile(), dataset.bookRatingFile(), dataset.userFile());
+        graph.freeze(storage);
+
+        pool = new ForkJoinPool(threads);
+        state = BxDatasetGenerator.stateName(0);
+        country = BxDatasetGenerator.countryName(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Set<String> booksReviewedByUsersInState() {
+        return Queries.getBooksReviewedByUsersInState(graph, state, pool);
+    }
+
+    @Benchmark
+    public Set<String> booksReviewedByUsersInCountry() {
+        return Queries.getBooksReviewedByUsersInCountry(graph, country, pool);
+    }
+}
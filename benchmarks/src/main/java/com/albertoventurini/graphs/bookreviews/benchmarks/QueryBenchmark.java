@@ -0,0 +1,176 @@
+package com.albertoventurini.graphs.bookreviews.benchmarks;
+
+import com.albertoventurini.graphs.bookreviews.Pair;
+import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
+import com.albertoventurini.graphs.bookreviews.generator.BxDatasetGenerator;
+import com.albertoventurini.graphs.bookreviews.graph.BookReviewsGraph;
+import com.albertoventurini.graphs.bookreviews.graph.BookReviewsGraphLoader;
+import com.albertoventurini.graphs.bookreviews.graph.Graph;
+import com.albertoventurini.graphs.bookreviews.graph.Queries;
+import com.albertoventurini.graphs.bookreviews.graph.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs every sequential query in {@link Queries}, and a traversal through {@link Query}, against a graph built once
+ * per trial, still mutable or frozen with its edges on or off the heap. The queries that run on a pool are in
+ * {@link ParallelQueryBenchmark}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+@State(Scope.Benchmark)
+public class QueryBenchmark {
+
+    private static final int AUTHOR_BATCH_SIZE = 100;
+    private static final int LOCATION_BATCH_SIZE = 10;
+    private static final int TITLE_BATCH_SIZE = 100;
+    private static final int TOP_COUNT = 10;
+
+    /** NONE to leave the graph mutable, or the {@link Graph.EdgeStorage} to freeze it with */
+    @Param({"NONE", "HEAP", "OFF_HEAP"})
+    public String freeze;
+
+    private BookReviewsGraph graph;
+    private String author;
+    private List<String> authors;
+    private String title;
+    private String state;
+    private String country;
+    private List<String> states;
+    private List<String> countries;
+    private List<String> titles;
+
+    @Setup(Level.Trial)
+    public void setUp(final Dataset dataset) {
+        graph = new BookReviewsGraphLoader(new BookReviewsCsvParser())
+                .load(dataset.bookFile(), dataset.bookRatingFile(), dataset.userFile());
+        if (!freeze.equals("NONE")) {
+            graph.freeze(Graph.EdgeStorage.valueOf(freeze));
+        }
+
+        author = Queries.getAuthorsByNumberOfReviews(graph).get(0).first;
+        authors = Queries.getTopAuthorsByNumberOfReviews(graph, AUTHOR_BATCH_SIZE)
+                .stream()
+                .map(p -> p.first)
+                .collect(Collectors.toList());
+        title = BxDatasetGenerator.title(0);
+        state = BxDatasetGenerator.stateName(0);
+        country = BxDatasetGenerator.countryName(0);
+        states = IntStream.range(0, LOCATION_BATCH_SIZE)
+                .mapToObj(BxDatasetGenerator::stateName)
+                .collect(Collectors.toList());
+        countries = IntStream.range(0, LOCATION_BATCH_SIZE)
+                .mapToObj(BxDatasetGenerator::countryName)
+                .collect(Collectors.toList());
+        titles = IntStream.range(0, TITLE_BATCH_SIZE)
+                .mapToObj(BxDatasetGenerator::title)
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<Pair<String, Integer>> authorsByNumberOfReviews() {
+        return Queries.getAuthorsByNumberOfReviews(graph);
+    }
+
+    @Benchmark
+    public LinkedHashMap<String, Double> authorsByAverageRating() {
+        return Queries.getAuthorsByAverageRating(graph);
+    }
+
+    /** Compare with {@link #authorsByNumberOfReviews()}, which sorts every author. */
+    @Benchmark
+    public List<Pair<String, Integer>> topAuthorsByNumberOfReviews() {
+        return Queries.getTopAuthorsByNumberOfReviews(graph, TOP_COUNT);
+    }
+
+    /** Compare with {@link #authorsByAverageRating()}, which sorts every author. */
+    @Benchmark
+    public List<Pair<String, Double>> topAuthorsByAverageRating() {
+        return Queries.getTopAuthorsByAverageRating(graph, TOP_COUNT);
+    }
+
+    @Benchmark
+    public List<Pair<String, Integer>> topBooksByNumberOfReviews() {
+        return Queries.getTopBooksByNumberOfReviews(graph, TOP_COUNT);
+    }
+
+    @Benchmark
+    public List<Pair<String, Double>> topBooksByAverageRating() {
+        return Queries.getTopBooksByAverageRating(graph, TOP_COUNT);
+    }
+
+    @Benchmark
+    public double averageRatingsByAuthor() {
+        return Queries.getAverageRatingsByAuthor(graph, author);
+    }
+
+    /** Compare with {@link #averageRatingsByAuthor()} times the batch size. */
+    @Benchmark
+    public Map<String, Double> averageRatingsByAuthors() {
+        return Queries.getAverageRatingsByAuthors(graph, authors);
+    }
+
+    @Benchmark
+    public Set<String> booksReviewedByUsersInState() {
+        return Queries.getBooksReviewedByUsersInState(graph, state);
+    }
+
+    @Benchmark
+    public Set<String> booksReviewedByUsersInCountry() {
+        return Queries.getBooksReviewedByUsersInCountry(graph, country);
+    }
+
+    /** Compare with {@link #booksReviewedByUsersInState()} times the batch size. */
+    @Benchmark
+    public Map<String, Set<String>> booksReviewedByUsersInStates() {
+        return Queries.getBooksReviewedByUsersInStates(graph, states);
+    }
+
+    /** Compare with {@link #booksReviewedByUsersInCountry()} times the batch size. */
+    @Benchmark
+    public Map<String, Set<String>> booksReviewedByUsersInCountries() {
+        return Queries.getBooksReviewedByUsersInCountries(graph, countries);
+    }
+
+    @Benchmark
+    public double averageAgeByBookTitle() {
+        return Queries.getAverageAgeByBookTitle(graph, title);
+    }
+
+    /** Compare with {@link #averageAgeByBookTitle()} times the batch size. */
+    @Benchmark
+    public Map<String, Double> averageAgesByBookTitles() {
+        return Queries.getAverageAgesByBookTitles(graph, titles);
+    }
+
+    /** Two hops through the Query DSL: the books reviewed by the users who reviewed a book. */
+    @Benchmark
+    public long coReviewedBooks() {
+        return new Query(graph)
+                .from(graph.findNodes(BookReviewsGraph.NODE_BOOK, "title", title))
+                .in(BookReviewsGraph.EDGE_REVIEWED).fromNodes()
+                .out(BookReviewsGraph.EDGE_REVIEWED).toNodes()
+                .collect(Collectors.counting());
+    }
+}
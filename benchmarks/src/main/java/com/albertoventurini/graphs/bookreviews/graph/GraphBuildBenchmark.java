@@ -0,0 +1,171 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import com.albertoventurini.graphs.bookreviews.benchmarks.Dataset;
+import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the graph one phase at a time (books, users, ratings, freezing), end to end from the CSV files,
+ * and from a snapshot.
+ * Each invocation builds a whole graph, so every invocation is timed on its own. The benchmark lives in the
+ * graph package to reach the per-record builder methods of {@link BookReviewsGraph}.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class GraphBuildBenchmark {
+
+    private static final String SNAPSHOT_FILE = "book-reviews.snapshot";
+
+    /** The parsed dataset, so that the build phases are measured without parsing. */
+    @State(Scope.Benchmark)
+    public static class Records {
+
+        BookReviewsCsvParser.ParseResult result;
+
+        @Setup(Level.Trial)
+        public void parse(final Dataset dataset) {
+            result = new BookReviewsCsvParser().parse(dataset.bookFile(), dataset.bookRatingFile(), dataset.userFile());
+        }
+    }
+
+    /** A graph holding the books, rebuilt before each invocation. */
+    @State(Scope.Thread)
+    public static class GraphWithBooks {
+
+        BookReviewsGraph graph;
+
+        @Setup(Level.Invocation)
+        public void build(final Records records) {
+            graph = new BookReviewsGraph();
+            records.result.books().forEach(graph::addBook);
+        }
+    }
+
+    /** A graph holding the books and the users, rebuilt before each invocation. */
+    @State(Scope.Thread)
+    public static class GraphWithUsers {
+
+        BookReviewsGraph graph;
+
+        @Setup(Level.Invocation)
+        public void build(final Records records) {
+            graph = new BookReviewsGraph();
+            records.result.books().forEach(graph::addBook);
+            records.result.users().forEach(graph::addUserNode);
+        }
+    }
+
+    /** A complete, mutable graph, rebuilt before each invocation. */
+    @State(Scope.Thread)
+    public static class CompleteGraph {
+
+        BookReviewsGraph graph;
+
+        @Setup(Level.Invocation)
+        public void build(final Records records) {
+            graph = new BookReviewsGraph(records.result);
+        }
+    }
+
+    /** A snapshot of the complete graph, written once per trial. */
+    @State(Scope.Benchmark)
+    public static class Snapshot {
+
+        Path path;
+
+        @Setup(Level.Trial)
+        public void write(final Dataset dataset, final Records records) {
+            path = dataset.resolve(SNAPSHOT_FILE);
+            new BookReviewsGraph(records.result).writeSnapshot(path);
+        }
+    }
+
+    /** The executor on which the pipelined loader parses the three files. */
+    @State(Scope.Benchmark)
+    public static class ParserThreads {
+
+        ExecutorService executor;
+
+        @Setup(Level.Trial)
+        public void start() {
+            executor = Executors.newFixedThreadPool(3);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public BookReviewsGraph addBooks(final Records records) {
+        final BookReviewsGraph graph = new BookReviewsGraph();
+        records.result.books().forEach(graph::addBook);
+        return graph;
+    }
+
+    @Benchmark
+    public BookReviewsGraph addUsers(final GraphWithBooks state, final Records records) {
+        records.result.users().forEach(state.graph::addUserNode);
+        return state.graph;
+    }
+
+    @Benchmark
+    public BookReviewsGraph addBookRatings(final GraphWithUsers state, final Records records) {
+        records.result.bookRatings().forEach(state.graph::addBookRating);
+        return state.graph;
+    }
+
+    @Benchmark
+    public BookReviewsGraph freeze(final CompleteGraph state) {
+        state.graph.freeze();
+        return state.graph;
+    }
+
+    @Benchmark
+    public BookReviewsGraph freezeOffHeap(final CompleteGraph state) {
+        state.graph.freeze(Graph.EdgeStorage.OFF_HEAP);
+        return state.graph;
+    }
+
+    @Benchmark
+    public BookReviewsGraph buildFromParseResult(final Records records) {
+        return new BookReviewsGraph(records.result);
+    }
+
+    @Benchmark
+    public BookReviewsGraph load(final Dataset dataset) {
+        return new BookReviewsGraphLoader(new BookReviewsCsvParser())
+                .load(dataset.bookFile(), dataset.bookRatingFile(), dataset.userFile());
+    }
+
+    @Benchmark
+    public BookReviewsGraph loadPipelined(final Dataset dataset, final ParserThreads threads) {
+        return new BookReviewsGraphLoader(new BookReviewsCsvParser())
+                .loadPipelined(dataset.bookFile(), dataset.bookRatingFile(), dataset.userFile(), threads.executor);
+    }
+
+    @Benchmark
+    public BookReviewsGraph readSnapshot(final Snapshot snapshot) {
+        return BookReviewsGraph.readSnapshot(snapshot.path);
+    }
+}
@@ -2,50 +2,58 @@ package com.albertoventurini.graphs.bookreviews;
 
 import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
 import com.albertoventurini.graphs.bookreviews.graph.BookReviewsGraph;
+import com.albertoventurini.graphs.bookreviews.graph.BookReviewsGraphLoader;
+import com.albertoventurini.graphs.bookreviews.graph.Graph;
 import com.albertoventurini.graphs.bookreviews.graph.Queries;
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.InvalidSnapshotException;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 public class BookReviews {
 
-    public static void main(final String[] args) {
-        final BookReviewsCsvParser bookReviewsCsvParser = new BookReviewsCsvParser();
+    private static final String BOOK_FILE = "data/BX-Books.csv";
+    private static final String BOOK_RATING_FILE = "data/BX-Book-Ratings.csv";
+    private static final String USER_FILE = "data/BX-Users.csv";
+    private static final String SNAPSHOT_FILE = "data/book-reviews.snapshot";
 
-        final var parseResult = bookReviewsCsvParser.parse(
-                "data/BX-Books.csv",
-                "data/BX-Book-Ratings.csv",
-                "data/BX-Users.csv");
+    private static final int TOP_COUNT = 10;
 
-        final var graph = new BookReviewsGraph(parseResult);
+    public static void main(final String[] args) throws IOException {
+        final var graph = loadGraph();
 
-        final List<Pair<String, Integer>> authorsByReviews = Queries.getAuthorsByNumberOfReviews(graph);
+        final List<Pair<String, Integer>> authorsByReviews = Queries.getTopAuthorsByNumberOfReviews(graph, TOP_COUNT);
 
         System.out.println("Top ten authors by number of reviews:\n" +
                 authorsByReviews
                         .stream()
-                        .limit(10)
                         .map(p -> String.format("%s %s", p.first, p.second))
                         .collect(Collectors.joining("\n")));
 
         final double avg = Queries.getAverageRatingsByAuthor(graph, "Dan Brown");
 
+        final Map<String, Double> averageRatings = Queries.getAverageRatingsByAuthors(
+                graph,
+                authorsByReviews.stream().map(p -> p.first).collect(Collectors.toList()));
+
         System.out.println("\n\nAverage ratings for top ten authors:\n" +
                 authorsByReviews
                         .stream()
-                        .limit(10)
-                        .map(p -> String.format("%s %f", p.first, Queries.getAverageRatingsByAuthor(graph, p.first)))
+                        .map(p -> String.format("%s %f", p.first, averageRatings.get(p.first)))
                         .collect(Collectors.joining("\n")));
 
         System.out.println(Queries.getBooksReviewedByUsersInState(graph, "california"));
 
         System.out.println("\n\nTop ten authors by ratings:\n" +
-                Queries.getAuthorsByAverageRating(graph)
-                        .entrySet()
+                Queries.getTopAuthorsByAverageRating(graph, TOP_COUNT)
                         .stream()
-                        .limit(10)
-                        .map(p -> String.format("%s %s", p.getKey(), p.getValue()))
+                        .map(p -> String.format("%s %s", p.first, p.second))
                         .collect(Collectors.joining("\n")));
 
         System.out.println("\n\nBooks reviewed by users in Italy (top 10):\n" +
@@ -56,4 +64,42 @@ public class BookReviews {
         System.out.println(Queries.getAverageAgeByBookTitle(graph, "Dracula"));
 
     }
+
+    /**
+     * Loads the graph from its snapshot, re-building it from the CSV files if the snapshot is missing or stale.
+     * Either way, the graph is frozen with its edges off the heap.
+     */
+    private static BookReviewsGraph loadGraph() throws IOException {
+        final Path snapshot = Path.of(SNAPSHOT_FILE);
+
+        if (Files.exists(snapshot) && isNewerThanSources(snapshot)) {
+            try {
+                return BookReviewsGraph.readSnapshot(snapshot, Graph.EdgeStorage.OFF_HEAP);
+            } catch (InvalidSnapshotException e) {
+                System.err.println("Ignoring snapshot: " + e.getMessage());
+            }
+        }
+
+        // No string pooling: load() hands each record to the graph and drops it, keeping no ParseResult to shrink
+        final BookReviewsCsvParser bookReviewsCsvParser = new BookReviewsCsvParser();
+
+        final var graph = new BookReviewsGraphLoader(bookReviewsCsvParser).load(
+                BOOK_FILE,
+                BOOK_RATING_FILE,
+                USER_FILE);
+
+        graph.freeze(Graph.EdgeStorage.OFF_HEAP);
+        graph.writeSnapshot(snapshot);
+        return graph;
+    }
+
+    private static boolean isNewerThanSources(final Path snapshot) throws IOException {
+        final FileTime snapshotTime = Files.getLastModifiedTime(snapshot);
+        for (final String source : List.of(BOOK_FILE, BOOK_RATING_FILE, USER_FILE)) {
+            if (Files.getLastModifiedTime(Path.of(source)).compareTo(snapshotTime) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
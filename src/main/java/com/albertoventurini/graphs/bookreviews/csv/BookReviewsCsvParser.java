@@ -1,12 +1,17 @@
 package com.albertoventurini.graphs.bookreviews.csv;
 
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import static java.nio.charset.StandardCharsets.ISO_8859_1;
 
@@ -17,6 +22,57 @@ public class BookReviewsCsvParser {
 
     public record ParseResult(List<Book> books, List<BookRating> bookRatings, List<User> users) {}
 
+    /** How the CSV files are read. */
+    public enum ReadMode {
+        /** Decode the file through a buffered reader, one row at a time. */
+        STREAMING,
+        /**
+         * Memory-map the file and scan its bytes directly, materializing only the fields that are used.
+         * Relies on the input being single-byte encoded, as the ISO-8859-1 BX dumps are.
+         */
+        MEMORY_MAPPED,
+        /**
+         * Memory-map the file, split it into ranges aligned to row boundaries and scan the ranges
+         * in parallel. Records are still handed to the consumer in file order.
+         */
+        PARALLEL_MEMORY_MAPPED
+    }
+
+    /** Number of ranges per worker thread, so that uneven ranges still balance out. */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ReadMode readMode;
+    private final ForkJoinPool pool;
+    private final boolean poolStrings;
+
+    public BookReviewsCsvParser() {
+        this(ReadMode.STREAMING);
+    }
+
+    public BookReviewsCsvParser(final ReadMode readMode) {
+        this(readMode, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool on which {@link ReadMode#PARALLEL_MEMORY_MAPPED} scans file ranges
+     */
+    public BookReviewsCsvParser(final ReadMode readMode, final ForkJoinPool pool) {
+        this(readMode, pool, false);
+    }
+
+    /**
+     * @param pool the pool on which {@link ReadMode#PARALLEL_MEMORY_MAPPED} scans file ranges
+     * @param poolStrings whether to read the columns whose values repeat across rows (authors, publishers, locations,
+     *                    and the user ids and ISBNs of ratings) through a {@link StringPool} per column, so that each
+     *                    distinct value is one String instance. The memory-mapped modes then only allocate a value
+     *                    the first time it is read; the parallel mode keeps pools per file range.
+     */
+    public BookReviewsCsvParser(final ReadMode readMode, final ForkJoinPool pool, final boolean poolStrings) {
+        this.readMode = readMode;
+        this.pool = pool;
+        this.poolStrings = poolStrings;
+    }
+
     public ParseResult parse(
             final String bookFilePath,
             final String bookRatingFilePath,
@@ -28,100 +84,219 @@ public class BookReviewsCsvParser {
                 parseUsers(userFilePath));
     }
 
-    private List<Book> parseBooks(final String bookFilePath) {
+    /**
+     * Parses the three files concurrently on the given executor.
+     * Waits for all of them to finish; if any fails, the exception of the first failing file is thrown,
+     * with the failures of the other files attached as suppressed exceptions.
+     */
+    public ParseResult parse(
+            final String bookFilePath,
+            final String bookRatingFilePath,
+            final String userFilePath,
+            final Executor executor) {
+
+        final CompletableFuture<List<Book>> books =
+                CompletableFuture.supplyAsync(() -> parseBooks(bookFilePath), executor);
+        final CompletableFuture<List<BookRating>> bookRatings =
+                CompletableFuture.supplyAsync(() -> parseBookRatings(bookRatingFilePath), executor);
+        final CompletableFuture<List<User>> users =
+                CompletableFuture.supplyAsync(() -> parseUsers(userFilePath), executor);
+
+        CsvParseException failure = null;
+        for (final CompletableFuture<?> future : List.of(books, bookRatings, users)) {
+            try {
+                future.join();
+            } catch (CompletionException e) {
+                final CsvParseException cause = e.getCause() instanceof CsvParseException
+                        ? (CsvParseException) e.getCause()
+                        : new CsvParseException("Error parsing CSV files", e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+
+        return new ParseResult(books.join(), bookRatings.join(), users.join());
+    }
+
+    /** Streams every book in the given file to the consumer, one row at a time. */
+    public void parseBooks(final String bookFilePath, final Consumer<Book> consumer) {
         try {
-            return readLines(bookFilePath).stream().skip(1).map(tokens -> {
-                final String isbn = tokens.get(0);
-                final String title = tokens.get(1);
-                final String author = tokens.get(2);
-                final int yearOfPublication = Integer.parseInt(tokens.get(3));
-                final String publisher = tokens.get(4);
-
-                return new Book(isbn, title, author, yearOfPublication, publisher);
-            }).collect(Collectors.toList());
+            readRecords(bookFilePath, this::bookMapper, consumer);
         } catch (Exception e) {
             throw new CsvParseException("Error parsing book file " + bookFilePath, e);
         }
     }
 
-    private List<BookRating> parseBookRatings(final String bookRatingFilePath) {
+    /** Streams every book rating in the given file to the consumer, one row at a time. */
+    public void parseBookRatings(final String bookRatingFilePath, final Consumer<BookRating> consumer) {
         try {
-            return readLines(bookRatingFilePath).stream().skip(1).map(tokens -> {
-                final String userId = tokens.get(0);
-                final String isbn = tokens.get(1);
-                final int rating = Integer.parseInt(tokens.get(2));
-
-                return new BookRating(userId, isbn, rating);
-            }).collect(Collectors.toList());
+            readRecords(bookRatingFilePath, this::bookRatingMapper, consumer);
         } catch (Exception e) {
             throw new CsvParseException("Error parsing book rating file " + bookRatingFilePath, e);
         }
     }
 
-    private List<User> parseUsers(final String userFilePath) {
+    /** Streams every user in the given file to the consumer, one row at a time. */
+    public void parseUsers(final String userFilePath, final Consumer<User> consumer) {
         try {
-            return readLines(userFilePath).stream().skip(1).map(tokens -> {
-                final String userId = tokens.get(0);
-                final String location = tokens.get(1);
-                final String ageString = tokens.get(2);
-                final Integer age = "NULL".equals(ageString) ? null : Integer.parseInt(ageString);
-
-                return new User(userId, location, age);
-            }).collect(Collectors.toList());
+            readRecords(userFilePath, this::userMapper, consumer);
         } catch (Exception e) {
             throw new CsvParseException("Error parsing user file " + userFilePath, e);
         }
     }
 
-    private List<List<String>> readLines(final String filePath) throws Exception {
-        final String fileString = Files.readString(Path.of(filePath), CHARSET);
+    private List<Book> parseBooks(final String bookFilePath) {
+        final List<Book> books = new ArrayList<>();
+        parseBooks(bookFilePath, books::add);
+        return books;
+    }
 
-        final char[] charArr = fileString.toCharArray();
+    private List<BookRating> parseBookRatings(final String bookRatingFilePath) {
+        final List<BookRating> bookRatings = new ArrayList<>();
+        parseBookRatings(bookRatingFilePath, bookRatings::add);
+        return bookRatings;
+    }
 
-        int start = 0;
-        int end = 0;
+    private List<User> parseUsers(final String userFilePath) {
+        final List<User> users = new ArrayList<>();
+        parseUsers(userFilePath, users::add);
+        return users;
+    }
 
-        boolean inQuotes = false;
+    private Function<CsvRow, Book> bookMapper() {
+        final StringPool authors = newStringPool();
+        final StringPool publishers = newStringPool();
+        return tokens -> toBook(tokens, authors, publishers);
+    }
 
-        final List<List<String>> lines = new ArrayList<>();
-        final List<String> line = new ArrayList<>();
+    private Function<CsvRow, BookRating> bookRatingMapper() {
+        final StringPool userIds = newStringPool();
+        final StringPool isbns = newStringPool();
+        return tokens -> toBookRating(tokens, userIds, isbns);
+    }
 
-        int i = 0;
-        while (i < charArr.length) {
-            if ((charArr[i] == '\n' || charArr[i] == '\r') && !inQuotes) {
+    private Function<CsvRow, User> userMapper() {
+        final StringPool locations = newStringPool();
+        return tokens -> toUser(tokens, locations);
+    }
 
-                if (end < start) {
-                    end = i;
-                }
-                line.add(String.valueOf(Arrays.copyOfRange(charArr, start, end)));
+    private StringPool newStringPool() {
+        return poolStrings ? new StringPool() : null;
+    }
 
-                lines.add(new ArrayList<>(line));
-                line.clear();
+    private static Book toBook(final CsvRow tokens, final StringPool authors, final StringPool publishers) {
+        final String isbn = tokens.get(0);
+        final String title = tokens.get(1);
+        final String author = tokens.get(2, authors);
+        final int yearOfPublication = tokens.getInt(3);
+        final String publisher = tokens.get(4, publishers);
 
-                if (charArr[i] == '\r' && i < charArr.length - 1 && charArr[i+1] == '\n') {
-                    i++;
-                }
+        return new Book(isbn, title, author, yearOfPublication, publisher);
+    }
 
-            } else if (charArr[i] == '"' && (i == 0 || charArr[i-1] != '\\')) {
-                if (!inQuotes) {
-                    start = i+1;
-                } else {
-                    end = i;
-                }
+    private static BookRating toBookRating(final CsvRow tokens, final StringPool userIds, final StringPool isbns) {
+        final String userId = tokens.get(0, userIds);
+        final String isbn = tokens.get(1, isbns);
+        final int rating = tokens.getInt(2);
 
-                inQuotes = !inQuotes;
-            } else if (charArr[i] == SEPARATOR && !inQuotes) {
-                if (end < start) {
-                    end = i;
-                }
+        return new BookRating(userId, isbn, rating);
+    }
+
+    private static User toUser(final CsvRow tokens, final StringPool locations) {
+        final String userId = tokens.get(0);
+        final String location = tokens.get(1, locations);
+        final Integer age = tokens.fieldEquals(2, "NULL") ? null : tokens.getInt(2);
+
+        return new User(userId, location, age);
+    }
+
+    /**
+     * Reads the file row by row, skipping the header, and hands each mapped record to the consumer.
+     * Mappers may hold state, such as string pools, so each thread reading the file gets its own.
+     */
+    private <T> void readRecords(
+            final String filePath,
+            final Supplier<Function<CsvRow, T>> mappers,
+            final Consumer<T> consumer) throws Exception {
 
-                line.add(String.valueOf(Arrays.copyOfRange(charArr, start, end)));
-                start = i+1;
+        switch (readMode) {
+            case STREAMING -> streamRecords(filePath, mappers.get(), consumer);
+            case MEMORY_MAPPED -> scanRecords(filePath, mappers.get(), consumer);
+            case PARALLEL_MEMORY_MAPPED -> scanRecordsInParallel(filePath, mappers, consumer);
+        }
+    }
+
+    private <T> void streamRecords(
+            final String filePath,
+            final Function<CsvRow, T> mapper,
+            final Consumer<T> consumer) throws Exception {
+
+        try (final CsvReader reader = CsvReader.open(Path.of(filePath), CHARSET, SEPARATOR)) {
+            final List<String> row = new ArrayList<>();
+            final CsvRow csvRow = CsvRow.of(row);
+            reader.readRow(row);
+
+            while (reader.readRow(row)) {
+                consumer.accept(mapper.apply(csvRow));
+            }
+        }
+    }
+
+    private <T> void scanRecords(
+            final String filePath,
+            final Function<CsvRow, T> mapper,
+            final Consumer<T> consumer) throws Exception {
+
+        final MappedFile file = MappedFile.map(Path.of(filePath));
+        final boolean[] header = { true };
+
+        new MappedCsvScanner(file, 0, file.size(), SEPARATOR).forEachRow(row -> {
+            if (header[0]) {
+                header[0] = false;
+            } else {
+                consumer.accept(mapper.apply(row));
             }
+        });
+    }
 
-            i++;
+    private <T> void scanRecordsInParallel(
+            final String filePath,
+            final Supplier<Function<CsvRow, T>> mappers,
+            final Consumer<T> consumer) throws Exception {
+
+        final MappedFile file = MappedFile.map(Path.of(filePath));
+        final long[] boundaries = MappedCsvScanner.splitRows(file, pool.getParallelism() * CHUNKS_PER_THREAD, pool);
+
+        final List<ForkJoinTask<List<T>>> chunks = new ArrayList<>(boundaries.length - 1);
+        for (int i = 0; i < boundaries.length - 1; i++) {
+            final MappedCsvScanner scanner = new MappedCsvScanner(file, boundaries[i], boundaries[i + 1], SEPARATOR);
+            final boolean hasHeader = i == 0;
+            final Function<CsvRow, T> mapper = mappers.get();
+
+            chunks.add(pool.submit(() -> {
+                final List<T> records = new ArrayList<>();
+                final boolean[] header = { hasHeader };
+                scanner.forEachRow(row -> {
+                    if (header[0]) {
+                        header[0] = false;
+                    } else {
+                        records.add(mapper.apply(row));
+                    }
+                });
+                return records;
+            }));
         }
 
-        return lines;
+        for (int i = 0; i < chunks.size(); i++) {
+            chunks.get(i).join().forEach(consumer);
+            chunks.set(i, null);
+        }
     }
 }
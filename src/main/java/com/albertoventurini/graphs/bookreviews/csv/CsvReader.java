@@ -0,0 +1,136 @@
+package com.albertoventurini.graphs.bookreviews.csv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streaming tokenizer for the Book-Crossing CSV dialect.
+ * Rows are read one at a time from a buffered {@link Reader}, so the working set is bounded
+ * by the longest row rather than by the size of the file.
+ */
+public class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char separator;
+
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+
+    private final StringBuilder field = new StringBuilder();
+    private char previous = 0;
+    private boolean skipLineFeed = false;
+    private boolean endOfInput = false;
+
+    public CsvReader(final Reader reader, final char separator) {
+        this.reader = reader;
+        this.separator = separator;
+    }
+
+    public static CsvReader open(final Path path, final Charset charset, final char separator) throws IOException {
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new CsvReader(new InputStreamReader(Channels.newInputStream(channel), charset), separator);
+    }
+
+    /**
+     * Reads the next row into the given list, replacing its contents.
+     * @return false if the end of the input was reached before any field was read
+     */
+    public boolean readRow(final List<String> row) throws IOException {
+        row.clear();
+
+        if (endOfInput) {
+            return false;
+        }
+
+        field.setLength(0);
+        boolean inQuotes = false;
+        int quotedEnd = -1;
+
+        while (true) {
+            if (position == limit && !fill()) {
+                endOfInput = true;
+                if (row.isEmpty() && field.length() == 0 && quotedEnd < 0) {
+                    return false;
+                }
+                row.add(fieldValue(quotedEnd));
+                return true;
+            }
+
+            final char c = buffer[position++];
+
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (c == '\n') {
+                    previous = c;
+                    continue;
+                }
+            }
+
+            if ((c == '\n' || c == '\r') && !inQuotes) {
+                row.add(fieldValue(quotedEnd));
+                skipLineFeed = c == '\r';
+                previous = c;
+                return true;
+            } else if (c == '"' && previous != '\\') {
+                if (!inQuotes) {
+                    field.setLength(0);
+                    quotedEnd = -1;
+                } else {
+                    quotedEnd = field.length();
+                }
+                inQuotes = !inQuotes;
+            } else if (c == separator && !inQuotes) {
+                row.add(fieldValue(quotedEnd));
+                field.setLength(0);
+                quotedEnd = -1;
+            } else {
+                field.append(c);
+            }
+
+            previous = c;
+        }
+    }
+
+    /**
+     * Passes every remaining row to the given consumer.
+     * The list is reused between rows, so consumers must not hold on to it.
+     */
+    public void forEachRow(final Consumer<List<String>> consumer) throws IOException {
+        final List<String> row = new ArrayList<>();
+        while (readRow(row)) {
+            consumer.accept(row);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private String fieldValue(final int quotedEnd) {
+        return quotedEnd < 0 ? field.toString() : field.substring(0, quotedEnd);
+    }
+
+    private boolean fill() throws IOException {
+        final int read = reader.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+}
@@ -0,0 +1,41 @@
+package com.albertoventurini.graphs.bookreviews.csv;
+
+import java.util.List;
+
+/**
+ * A single row of a CSV file.
+ * Implementations may be views over a reused buffer, so a row is only valid until the next one is read.
+ */
+public interface CsvRow {
+
+    int size();
+
+    String get(int index);
+
+    /** Returns the field through the given pool, so that repeated values share one instance; a null pool is ignored. */
+    default String get(final int index, final StringPool pool) {
+        return pool == null ? get(index) : pool.intern(get(index));
+    }
+
+    default int getInt(final int index) {
+        return Integer.parseInt(get(index));
+    }
+
+    default boolean fieldEquals(final int index, final String value) {
+        return value.equals(get(index));
+    }
+
+    static CsvRow of(final List<String> fields) {
+        return new CsvRow() {
+            @Override
+            public int size() {
+                return fields.size();
+            }
+
+            @Override
+            public String get(final int index) {
+                return fields.get(index);
+            }
+        };
+    }
+}
@@ -0,0 +1,265 @@
+package com.albertoventurini.graphs.bookreviews.csv;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Byte-level tokenizer over a memory-mapped, single-byte encoded CSV file.
+ * The scanner only records the offsets of each field; strings are materialized when a field is asked for.
+ */
+class MappedCsvScanner {
+
+    private static final long MIN_CHUNK_SIZE = 1 << 20;
+
+    private final MappedFile file;
+    private final long from;
+    private final long to;
+    private final byte separator;
+
+    private final Row row = new Row();
+
+    /**
+     * @param from offset of the first byte of a row
+     * @param to offset at which scanning stops; a row starting before it is always read to its end
+     */
+    MappedCsvScanner(final MappedFile file, final long from, final long to, final char separator) {
+        this.file = file;
+        this.from = from;
+        this.to = to;
+        this.separator = (byte) separator;
+    }
+
+    void forEachRow(final Consumer<CsvRow> consumer) {
+        final long size = file.size();
+        if (from >= Math.min(to, size)) {
+            return;
+        }
+
+        long start = from;
+        long end = from - 1;
+        boolean inQuotes = false;
+        byte previous = from == 0 ? 0 : file.get(from - 1);
+
+        row.clear();
+
+        long i = from;
+        while (i < size) {
+            final byte b = file.get(i);
+
+            if ((b == '\n' || b == '\r') && !inQuotes) {
+                row.add(start, end < start ? i : end);
+                consumer.accept(row);
+                row.clear();
+
+                if (b == '\r' && i < size - 1 && file.get(i + 1) == '\n') {
+                    i++;
+                }
+
+                start = i + 1;
+                if (start >= to) {
+                    return;
+                }
+            } else if (b == '"' && previous != '\\') {
+                if (!inQuotes) {
+                    start = i + 1;
+                } else {
+                    end = i;
+                }
+                inQuotes = !inQuotes;
+            } else if (b == separator && !inQuotes) {
+                row.add(start, end < start ? i : end);
+                start = i + 1;
+            }
+
+            previous = b;
+            i++;
+        }
+
+        if (row.size() > 0 || start < size) {
+            row.add(start, end < start ? size : end);
+            consumer.accept(row);
+            row.clear();
+        }
+    }
+
+    /**
+     * Splits the file into at most {@code chunkCount} ranges of roughly equal size, each starting at the beginning
+     * of a row, so that every range can be scanned independently.
+     * Whether a nominal split point falls inside a quoted field depends on every quote before it, so the quotes of
+     * each range are first counted in parallel, and the parity of the counts gives the quoting state at each split
+     * point. Each split point is then moved forward, again in parallel, to the start of the next row.
+     * @return the boundaries of the ranges: range {@code i} is [boundaries[i], boundaries[i + 1])
+     */
+    static long[] splitRows(final MappedFile file, final int chunkCount, final ForkJoinPool pool) {
+        final long size = file.size();
+        final int chunks = (int) Math.max(1, Math.min(chunkCount, size / MIN_CHUNK_SIZE));
+
+        final long[] nominal = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            nominal[i] = size * i / chunks;
+        }
+
+        final List<ForkJoinTask<Boolean>> parityTasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final int chunk = i;
+            parityTasks.add(pool.submit(() -> hasOddQuoteCount(file, nominal[chunk], nominal[chunk + 1])));
+        }
+
+        final boolean[] inQuotes = new boolean[chunks];
+        for (int i = 1; i < chunks; i++) {
+            inQuotes[i] = inQuotes[i - 1] ^ parityTasks.get(i - 1).join();
+        }
+
+        final List<ForkJoinTask<Long>> alignTasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            final int chunk = i;
+            alignTasks.add(pool.submit(() -> nextRowStart(file, nominal[chunk], inQuotes[chunk])));
+        }
+
+        final long[] boundaries = new long[chunks + 1];
+        for (int i = 0; i < chunks; i++) {
+            boundaries[i] = alignTasks.get(i).join();
+        }
+        boundaries[chunks] = size;
+
+        return boundaries;
+    }
+
+    private static boolean hasOddQuoteCount(final MappedFile file, final long from, final long to) {
+        boolean odd = false;
+        byte previous = from == 0 ? 0 : file.get(from - 1);
+
+        for (long i = from; i < to; i++) {
+            final byte b = file.get(i);
+            if (b == '"' && previous != '\\') {
+                odd = !odd;
+            }
+            previous = b;
+        }
+
+        return odd;
+    }
+
+    /** Finds the first row start at or after the given position, knowing whether that position is quoted. */
+    private static long nextRowStart(final MappedFile file, final long position, final boolean inQuotesAtPosition) {
+        final long size = file.size();
+        if (position == 0) {
+            return 0;
+        }
+
+        final byte last = file.get(position - 1);
+        if (!inQuotesAtPosition && (last == '\n' || last == '\r')) {
+            return last == '\r' && position < size && file.get(position) == '\n' ? position + 1 : position;
+        }
+
+        boolean inQuotes = inQuotesAtPosition;
+        byte previous = last;
+
+        for (long i = position; i < size; i++) {
+            final byte b = file.get(i);
+            if ((b == '\n' || b == '\r') && !inQuotes) {
+                return b == '\r' && i < size - 1 && file.get(i + 1) == '\n' ? i + 2 : i + 1;
+            } else if (b == '"' && previous != '\\') {
+                inQuotes = !inQuotes;
+            }
+            previous = b;
+        }
+
+        return size;
+    }
+
+    private class Row implements CsvRow {
+
+        private long[] starts = new long[16];
+        private long[] ends = new long[16];
+        private int size = 0;
+
+        void add(final long start, final long end) {
+            if (size == starts.length) {
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+            }
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String get(final int index) {
+            checkIndex(index);
+            return file.getString(starts[index], ends[index]);
+        }
+
+        @Override
+        public String get(final int index, final StringPool pool) {
+            checkIndex(index);
+            return pool == null
+                    ? file.getString(starts[index], ends[index])
+                    : pool.intern(file, starts[index], ends[index]);
+        }
+
+        @Override
+        public int getInt(final int index) {
+            checkIndex(index);
+
+            long position = starts[index];
+            final long end = ends[index];
+            final boolean negative = position < end && file.get(position) == '-';
+            if (negative) {
+                position++;
+            }
+            if (position == end) {
+                throw new NumberFormatException("For input string: \"" + get(index) + "\"");
+            }
+
+            int value = 0;
+            for (; position < end; position++) {
+                final int digit = file.get(position) - '0';
+                if (digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+                    throw new NumberFormatException("For input string: \"" + get(index) + "\"");
+                }
+                value = value * 10 - digit;
+            }
+
+            if (!negative && value == Integer.MIN_VALUE) {
+                throw new NumberFormatException("For input string: \"" + get(index) + "\"");
+            }
+            return negative ? value : -value;
+        }
+
+        @Override
+        public boolean fieldEquals(final int index, final String value) {
+            checkIndex(index);
+
+            final long start = starts[index];
+            if (ends[index] - start != value.length()) {
+                return false;
+            }
+            for (int i = 0; i < value.length(); i++) {
+                if ((file.get(start + i) & 0xff) != value.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void checkIndex(final int index) {
+            if (index >= size) {
+                throw new IndexOutOfBoundsException("Field " + index + " out of bounds for row of size " + size);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.albertoventurini.graphs.bookreviews.csv;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * A read-only memory mapping of a whole file.
+ * Files larger than a single {@link MappedByteBuffer} can address are mapped as consecutive segments.
+ */
+class MappedFile {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    private MappedFile(final MappedByteBuffer[] segments, final long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    static MappedFile map(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+
+            for (int i = 0; i < segments.length; i++) {
+                final long offset = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+
+            return new MappedFile(segments, size);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    byte get(final long position) {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+    }
+
+    /** Decodes the bytes in [from, to) as ISO-8859-1, i.e. one char per byte. */
+    String getString(final long from, final long to) {
+        final byte[] bytes = new byte[(int) (to - from)];
+        get(from, bytes, bytes.length);
+        return new String(bytes, ISO_8859_1);
+    }
+
+    /** Copies the given number of bytes, starting at the given position, to the start of the target array. */
+    void get(final long from, final byte[] target, final int length) {
+        final int segment = (int) (from >>> SEGMENT_SHIFT);
+
+        if (length > 0 && segment == (int) ((from + length - 1) >>> SEGMENT_SHIFT)) {
+            segments[segment].get((int) (from & SEGMENT_MASK), target, 0, length);
+        } else {
+            for (int i = 0; i < length; i++) {
+                target[i] = get(from + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.albertoventurini.graphs.bookreviews.csv;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Dictionary of the distinct values of a CSV column, handing out one canonical String per value.
+ * A value that repeats across rows, such as a publisher or a location, is then allocated once, and its copies share
+ * the hash code that String caches, so that the maps and indexes keyed on them hash each value once.
+ * Values read from a memory-mapped file are looked up straight from its bytes, and only allocated the first time.
+ * A pool is not thread-safe.
+ */
+public class StringPool {
+
+    private static final int MIN_CAPACITY = 64;
+
+    private String[] values = new String[MIN_CAPACITY];
+    private int[] hashes = new int[MIN_CAPACITY];
+    private int size = 0;
+
+    /** Holds the bytes of the field being looked up, so that they are read from the file once */
+    private byte[] field = new byte[64];
+
+    /** Returns the pooled String equal to the given one, adding it to the pool if there is none yet. */
+    public String intern(final String value) {
+        final int hash = value.hashCode();
+        int slot = slot(hash);
+
+        for (String pooled = values[slot]; pooled != null; pooled = values[slot]) {
+            if (hashes[slot] == hash && pooled.equals(value)) {
+                return pooled;
+            }
+            slot = (slot + 1) & (values.length - 1);
+        }
+
+        return add(slot, hash, value);
+    }
+
+    /** Returns the pooled String equal to the ISO-8859-1 bytes in [from, to) of the file. */
+    String intern(final MappedFile file, final long from, final long to) {
+        final int length = (int) (to - from);
+        if (length > field.length) {
+            field = new byte[Math.max(length, field.length * 2)];
+        }
+        file.get(from, field, length);
+
+        // Same as String.hashCode, since ISO-8859-1 maps each byte to the char of the same value
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + (field[i] & 0xff);
+        }
+        int slot = slot(hash);
+
+        for (String pooled = values[slot]; pooled != null; pooled = values[slot]) {
+            if (hashes[slot] == hash && equals(pooled, field, length)) {
+                return pooled;
+            }
+            slot = (slot + 1) & (values.length - 1);
+        }
+
+        return add(slot, hash, new String(field, 0, length, ISO_8859_1));
+    }
+
+    /** Number of distinct values in the pool. */
+    public int size() {
+        return size;
+    }
+
+    private String add(final int slot, final int hash, final String value) {
+        values[slot] = value;
+        hashes[slot] = hash;
+        if (++size > values.length / 2) {
+            resize();
+        }
+        return value;
+    }
+
+    private void resize() {
+        final String[] oldValues = values;
+        final int[] oldHashes = hashes;
+        values = new String[oldValues.length * 2];
+        hashes = new int[oldValues.length * 2];
+
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = slot(oldHashes[i]);
+                while (values[slot] != null) {
+                    slot = (slot + 1) & (values.length - 1);
+                }
+                values[slot] = oldValues[i];
+                hashes[slot] = oldHashes[i];
+            }
+        }
+    }
+
+    private int slot(final int hash) {
+        final int h = hash * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (values.length - 1);
+    }
+
+    private static boolean equals(final String value, final byte[] bytes, final int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((bytes[i] & 0xff) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
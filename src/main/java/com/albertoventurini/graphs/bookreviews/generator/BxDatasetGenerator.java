@@ -0,0 +1,301 @@
+package com.albertoventurini.graphs.bookreviews.generator;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Writes a synthetic Book-Crossing dataset (BX-Books.csv, BX-Users.csv and BX-Book-Ratings.csv) in the dialect read by
+ * {@link com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser}: ISO-8859-1, {@code ;}-separated quoted
+ * fields, unquoted {@code NULL} ages and "city, state, country" locations.
+ *
+ * How often each book is rated, how many books each author writes and where users live all follow Zipf
+ * distributions with tunable exponents. The output depends only on the settings, so a given seed always produces
+ * the same files.
+ *
+ * Usage: {@code BxDatasetGenerator <output directory> [name=value ...]}, where the names are those of
+ * {@link Settings} plus {@code scale}, which multiplies the default sizes: {@code scale=10} writes ten times
+ * the original sample.
+ */
+public class BxDatasetGenerator {
+
+    public static final String BOOK_FILE = "BX-Books.csv";
+    public static final String BOOK_RATING_FILE = "BX-Book-Ratings.csv";
+    public static final String USER_FILE = "BX-Users.csv";
+
+    private static final Charset CHARSET = ISO_8859_1;
+    private static final char SEPARATOR = ';';
+
+    private static final String[] COUNTRIES = {
+            "usa", "canada", "united kingdom", "germany", "spain", "australia", "italy", "france",
+            "portugal", "new zealand", "netherlands", "switzerland", "espa\u00f1a", "\u00f6sterreich", "brasil"
+    };
+    private static final int STATES_PER_COUNTRY = 30;
+    private static final int CITIES_PER_STATE = 40;
+    private static final double NO_STATE_RATIO = 0.03;
+
+    private static final String[] FIRST_NAMES = {
+            "Anne", "Jos\u00e9", "Zo\u00eb", "G\u00fcnter", "Fran\u00e7ois", "S\u00f8ren", "In\u00eas", "Dan", "Agatha", "Mary",
+            "Stephen", "Isabel", "\u00d3lafur", "Ren\u00e9e", "John", "Niccol\u00f2", "Bj\u00f6rk", "Nora", "Chlo\u00e9", "Ra\u00fal"
+    };
+    private static final String[] LAST_NAMES = {
+            "M\u00fcller", "Garc\u00eda", "Bront\u00eb", "Brown", "Christie", "Higgins Clark", "King", "Allende", "N\u00fa\u00f1ez",
+            "\u00d8rsted", "Grass", "Dupr\u00e9", "Lagerl\u00f6f", "Saramago", "Rowling", "Le Carr\u00e9", "Smith", "Ib\u00e1\u00f1ez"
+    };
+
+    private static final int FIRST_YEAR = 1950;
+    private static final int YEARS = 55;
+    private static final double UNKNOWN_YEAR_RATIO = 0.01;
+
+    private static final int FIRST_AGE = 10;
+    private static final int AGES = 70;
+    private static final double NULL_AGE_RATIO = 0.4;
+
+    private static final double IMPLICIT_RATING_RATIO = 0.6;
+    private static final double UNKNOWN_BOOK_RATIO = 0.05;
+
+    /** One title in this many contains a separator and escaped quotes, as some titles in the BX dumps do. */
+    private static final int AWKWARD_TITLE_INTERVAL = 50;
+
+    /**
+     * @param users number of users
+     * @param books number of books
+     * @param ratings number of ratings; a few of them refer to books that are not in the book file,
+     *                as in the BX dumps
+     * @param authors number of authors that books are drawn from
+     * @param publishers number of publishers that books are drawn from
+     * @param bookSkew Zipf exponent of the number of ratings per book
+     * @param authorSkew Zipf exponent of the number of books per author
+     * @param locationSkew Zipf exponent of the number of users per country, state and city
+     * @param seed seed of the random generator
+     */
+    public record Settings(
+            int users,
+            int books,
+            int ratings,
+            int authors,
+            int publishers,
+            double bookSkew,
+            double authorSkew,
+            double locationSkew,
+            long seed) {
+
+        /** The size of the original Book-Crossing sample, with moderately skewed popularity. */
+        public static final Settings BX_SAMPLE =
+                new Settings(278_858, 271_379, 1_149_780, 102_042, 16_807, 0.9, 1.1, 1.0, 42);
+
+        /** These settings with every count multiplied by the given factor. */
+        public Settings scale(final double factor) {
+            return new Settings(
+                    scale(users, factor),
+                    scale(books, factor),
+                    scale(ratings, factor),
+                    scale(authors, factor),
+                    scale(publishers, factor),
+                    bookSkew,
+                    authorSkew,
+                    locationSkew,
+                    seed);
+        }
+
+        private static int scale(final int count, final double factor) {
+            return (int) Math.max(1, Math.min(Integer.MAX_VALUE, Math.round(count * factor)));
+        }
+    }
+
+    private final Settings settings;
+    private final Random random;
+
+    public BxDatasetGenerator(final Settings settings) {
+        this.settings = settings;
+        this.random = new Random(settings.seed());
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: BxDatasetGenerator <output directory> [name=value ...]");
+            System.exit(1);
+        }
+
+        final Path directory = Path.of(args[0]);
+        final Settings settings = parseSettings(args);
+
+        Files.createDirectories(directory);
+        new BxDatasetGenerator(settings).write(directory);
+        System.out.println("Wrote " + settings + " to " + directory);
+    }
+
+    /** Writes the book, user and rating files to the given directory, replacing any existing ones. */
+    public void write(final Path directory) throws IOException {
+        writeBooks(directory.resolve(BOOK_FILE));
+        writeUsers(directory.resolve(USER_FILE));
+        writeBookRatings(directory.resolve(BOOK_RATING_FILE));
+    }
+
+    /** ISBN of the book with the given rank; lower ranks are rated more often. */
+    public static String isbn(final int book) {
+        return String.format("%010d", book);
+    }
+
+    /** Title of the book with the given rank. */
+    public static String title(final int book) {
+        return book % AWKWARD_TITLE_INTERVAL == 0 && book > 0
+                ? "Book " + book + "; the \\\"annotated\\\" edition"
+                : "Book " + book;
+    }
+
+    /** Name of the author with the given rank; lower ranks write more books. */
+    public static String authorName(final int author) {
+        final int names = FIRST_NAMES.length * LAST_NAMES.length;
+        final String name = FIRST_NAMES[author % FIRST_NAMES.length] + " "
+                + LAST_NAMES[(author / FIRST_NAMES.length) % LAST_NAMES.length];
+        return author < names ? name : name + " " + (author / names + 1);
+    }
+
+    /** Name of the country with the given rank; lower ranks have more users. */
+    public static String countryName(final int country) {
+        return COUNTRIES[country];
+    }
+
+    /** Name of the state with the given rank within its country. */
+    public static String stateName(final int state) {
+        return "state " + state;
+    }
+
+    private void writeBooks(final Path path) throws IOException {
+        final ZipfDistribution authors = new ZipfDistribution(settings.authors(), settings.authorSkew(), random);
+
+        try (final Writer writer = Files.newBufferedWriter(path, CHARSET)) {
+            writeRow(writer, "ISBN", "Book-Title", "Book-Author", "Year-Of-Publication", "Publisher",
+                    "Image-URL-S", "Image-URL-M", "Image-URL-L");
+
+            for (int i = 0; i < settings.books(); i++) {
+                final String imageUrl = "http://images.example.com/images/P/" + isbn(i) + ".01.jpg";
+                final int year = random.nextDouble() < UNKNOWN_YEAR_RATIO ? 0 : FIRST_YEAR + random.nextInt(YEARS);
+
+                writeRow(writer,
+                        isbn(i),
+                        title(i),
+                        authorName(authors.next()),
+                        String.valueOf(year),
+                        "Publisher " + random.nextInt(settings.publishers()),
+                        imageUrl,
+                        imageUrl,
+                        imageUrl);
+            }
+        }
+    }
+
+    private void writeUsers(final Path path) throws IOException {
+        final ZipfDistribution countries = new ZipfDistribution(COUNTRIES.length, settings.locationSkew(), random);
+        final ZipfDistribution states = new ZipfDistribution(STATES_PER_COUNTRY, settings.locationSkew(), random);
+        final ZipfDistribution cities = new ZipfDistribution(CITIES_PER_STATE, settings.locationSkew(), random);
+
+        try (final Writer writer = Files.newBufferedWriter(path, CHARSET)) {
+            writeRow(writer, "User-ID", "Location", "Age");
+
+            for (int i = 1; i <= settings.users(); i++) {
+                final int state = states.next();
+                final String location = String.join(", ",
+                        "city " + state + "." + cities.next(),
+                        random.nextDouble() < NO_STATE_RATIO ? "n/a" : stateName(state),
+                        countryName(countries.next()));
+
+                writeField(writer, String.valueOf(i));
+                writer.write(SEPARATOR);
+                writeField(writer, location);
+                writer.write(SEPARATOR);
+                if (random.nextDouble() < NULL_AGE_RATIO) {
+                    writer.write("NULL");
+                } else {
+                    writeField(writer, String.valueOf(FIRST_AGE + random.nextInt(AGES)));
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    private void writeBookRatings(final Path path) throws IOException {
+        final ZipfDistribution books = new ZipfDistribution(settings.books(), settings.bookSkew(), random);
+
+        try (final Writer writer = Files.newBufferedWriter(path, CHARSET)) {
+            writeRow(writer, "User-ID", "ISBN", "Book-Rating");
+
+            for (int i = 0; i < settings.ratings(); i++) {
+                final int book = random.nextDouble() < UNKNOWN_BOOK_RATIO
+                        ? settings.books() + random.nextInt(settings.books())
+                        : books.next();
+                final int rating = random.nextDouble() < IMPLICIT_RATING_RATIO ? 0 : 1 + random.nextInt(10);
+
+                writeRow(writer,
+                        String.valueOf(1 + random.nextInt(settings.users())),
+                        isbn(book),
+                        String.valueOf(rating));
+            }
+        }
+    }
+
+    private static Settings parseSettings(final String[] args) {
+        double scale = 1;
+        int users = -1, books = -1, ratings = -1, authors = -1, publishers = -1;
+        final Settings defaults = Settings.BX_SAMPLE;
+        double bookSkew = defaults.bookSkew();
+        double authorSkew = defaults.authorSkew();
+        double locationSkew = defaults.locationSkew();
+        long seed = defaults.seed();
+
+        for (int i = 1; i < args.length; i++) {
+            final String[] option = args[i].split("=", 2);
+            if (option.length != 2) {
+                throw new IllegalArgumentException("Expected name=value: " + args[i]);
+            }
+            final String value = option[1];
+            switch (option[0]) {
+                case "scale" -> scale = Double.parseDouble(value);
+                case "users" -> users = Integer.parseInt(value);
+                case "books" -> books = Integer.parseInt(value);
+                case "ratings" -> ratings = Integer.parseInt(value);
+                case "authors" -> authors = Integer.parseInt(value);
+                case "publishers" -> publishers = Integer.parseInt(value);
+                case "bookSkew" -> bookSkew = Double.parseDouble(value);
+                case "authorSkew" -> authorSkew = Double.parseDouble(value);
+                case "locationSkew" -> locationSkew = Double.parseDouble(value);
+                case "seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown setting " + option[0]);
+            }
+        }
+
+        final Settings scaled = defaults.scale(scale);
+        return new Settings(
+                users < 0 ? scaled.users() : users,
+                books < 0 ? scaled.books() : books,
+                ratings < 0 ? scaled.ratings() : ratings,
+                authors < 0 ? scaled.authors() : authors,
+                publishers < 0 ? scaled.publishers() : publishers,
+                bookSkew,
+                authorSkew,
+                locationSkew,
+                seed);
+    }
+
+    private static void writeRow(final Writer writer, final String... fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(SEPARATOR);
+            }
+            writeField(writer, fields[i]);
+        }
+        writer.write('\n');
+    }
+
+    private static void writeField(final Writer writer, final String value) throws IOException {
+        writer.write('"');
+        writer.write(value);
+        writer.write('"');
+    }
+}
@@ -0,0 +1,79 @@
+package com.albertoventurini.graphs.bookreviews.generator;
+
+import java.util.Random;
+
+/**
+ * Zipf distribution over [0, n): rank {@code k} is drawn with probability proportional to {@code 1 / (k + 1)^s}.
+ * An exponent of 0 gives a uniform distribution.
+ *
+ * Samples are drawn by rejection-inversion (Hormann and Derflinger, 1996), which takes constant time and memory
+ * whatever the number of elements, so no cumulative table over millions of books has to be built.
+ */
+class ZipfDistribution {
+
+    private final int n;
+    private final double exponent;
+    private final Random random;
+
+    private final double hIntegralX1;
+    private final double hIntegralN;
+    private final double threshold;
+
+    ZipfDistribution(final int n, final double exponent, final Random random) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Number of elements must be positive: " + n);
+        }
+        if (exponent < 0) {
+            throw new IllegalArgumentException("Exponent must not be negative: " + exponent);
+        }
+
+        this.n = n;
+        this.exponent = exponent;
+        this.random = random;
+
+        hIntegralX1 = hIntegral(1.5) - 1;
+        hIntegralN = hIntegral(n + 0.5);
+        threshold = 2 - hIntegralInverse(hIntegral(2.5) - h(2));
+    }
+
+    int next() {
+        while (true) {
+            final double u = hIntegralN + random.nextDouble() * (hIntegralX1 - hIntegralN);
+            final double x = hIntegralInverse(u);
+            final int k = (int) Math.max(1, Math.min(n, (long) (x + 0.5)));
+
+            if (k - x <= threshold || u >= hIntegral(k + 0.5) - h(k)) {
+                return k - 1;
+            }
+        }
+    }
+
+    /** Integral of {@link #h} from 1 to x, shifted by a constant. */
+    private double hIntegral(final double x) {
+        final double logX = Math.log(x);
+        return expm1OverX((1 - exponent) * logX) * logX;
+    }
+
+    private double h(final double x) {
+        return Math.exp(-exponent * Math.log(x));
+    }
+
+    private double hIntegralInverse(final double x) {
+        final double t = Math.max(-1, x * (1 - exponent));
+        return Math.exp(log1pOverX(t) * x);
+    }
+
+    /** log(1 + x) / x, accurate near 0. */
+    private static double log1pOverX(final double x) {
+        return Math.abs(x) > 1e-8
+                ? Math.log1p(x) / x
+                : 1 - x * (0.5 - x * (1.0 / 3 - 0.25 * x));
+    }
+
+    /** (exp(x) - 1) / x, accurate near 0. */
+    private static double expm1OverX(final double x) {
+        return Math.abs(x) > 1e-8
+                ? Math.expm1(x) / x
+                : 1 + x * 0.5 * (1 + x / 3 * (1 + 0.25 * x));
+    }
+}
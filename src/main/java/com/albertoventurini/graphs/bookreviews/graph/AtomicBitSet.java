@@ -0,0 +1,32 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size set of small ints, such as node indexes, backed by atomic words so that the threads of a parallel
+ * traversal can mark the nodes they visit without locking.
+ */
+class AtomicBitSet {
+
+    private final AtomicLongArray words;
+
+    AtomicBitSet(final int size) {
+        words = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /** Sets the given bit; returns true if this call set it, false if it was already set. */
+    boolean add(final int index) {
+        final int word = index >>> 6;
+        final long mask = 1L << index;
+
+        long current = words.get(word);
+        while ((current & mask) == 0) {
+            final long witness = words.compareAndExchange(word, current, current | mask);
+            if (witness == current) {
+                return true;
+            }
+            current = witness;
+        }
+        return false;
+    }
+}
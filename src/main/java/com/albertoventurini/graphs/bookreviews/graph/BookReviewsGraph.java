@@ -5,6 +5,7 @@ import com.albertoventurini.graphs.bookreviews.csv.BookRating;
 import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
 import com.albertoventurini.graphs.bookreviews.csv.User;
 
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -27,121 +28,225 @@ public class BookReviewsGraph extends Graph {
     public static final String EDGE_IN_COUNTRY = "inCountry";
     public static final String EDGE_REVIEWED = "reviewed";
 
+    final Label bookLabel = internLabel(NODE_BOOK);
+    final Label userLabel = internLabel(NODE_USER);
+    final Label publisherLabel = internLabel(NODE_PUBLISHER);
+    final Label authorLabel = internLabel(NODE_AUTHOR);
+    final Label cityLabel = internLabel(NODE_CITY);
+    final Label stateLabel = internLabel(NODE_STATE);
+    final Label countryLabel = internLabel(NODE_COUNTRY);
+
+    final Label publishedByLabel = internLabel(EDGE_PUBLISHED_BY);
+    final Label writtenByLabel = internLabel(EDGE_WRITTEN_BY);
+    final Label inCityLabel = internLabel(EDGE_IN_CITY);
+    final Label inStateLabel = internLabel(EDGE_IN_STATE);
+    final Label inCountryLabel = internLabel(EDGE_IN_COUNTRY);
+    final Label reviewedLabel = internLabel(EDGE_REVIEWED);
+
     public MapSet<String, Node> countriesByName = new MapSet<>();
     public MapSet<String, Node> statesByName = new MapSet<>();
     public MapSet<String, Node> citiesByName = new MapSet<>();
 
+    /** Ratings per book, and per author and publisher over all of their books, maintained as ratings are added. */
+    final RatingAggregates bookRatings = new RatingAggregates();
+    final RatingAggregates authorRatings = new RatingAggregates();
+    final RatingAggregates publisherRatings = new RatingAggregates();
+
+    /** Index of the author and publisher node of each book, by book node index. */
+    private final IntColumn bookAuthors = new IntColumn();
+    private final IntColumn bookPublishers = new IntColumn();
+
     public BookReviewsGraph(final BookReviewsCsvParser.ParseResult source) {
-        source.books().forEach(b -> {
-            addBookNode(b);
-            addPublisherNode(b);
-            addAuthorNode(b);
-        });
+        this();
+
+        // Every book and user is a node; authors, publishers and locations come on top
+        ensureNodeCapacity(source.books().size() + source.users().size());
+        source.books().forEach(this::addBook);
 
         source.users().forEach(this::addUserNode);
 
         source.bookRatings().forEach(this::addBookRating);
     }
 
-    private void addBookNode(final Book book) {
-        final Node node = addNode(book.isbn(), NODE_BOOK);
-        node.properties.put("isbn", book.isbn());
-        node.properties.put("title", book.title());
+    /**
+     * Creates an empty graph, to be populated one record at a time.
+     * Books and users must be added before the ratings that refer to them.
+     */
+    BookReviewsGraph() {
+        createIdProperty(bookLabel, "isbn");
+
+        createIndex(bookLabel, "title");
+        createIndex(authorLabel, "name");
+        createIndex(userLabel, "age");
+
+        createRangeIndex(userLabel, "age");
+        createRangeIndex(publishedByLabel, "year");
+        createRangeIndex(reviewedLabel, "rating");
+    }
+
+    /** Same as {@link #readSnapshot(Path, EdgeStorage)} with edges on the heap. */
+    public static BookReviewsGraph readSnapshot(final Path path) {
+        return readSnapshot(path, EdgeStorage.HEAP);
     }
 
-    private void addPublisherNode(final Book book) {
-        addNodeIfAbsent(book.publisher(), NODE_PUBLISHER);
+    /**
+     * Loads a graph previously saved with {@link #writeSnapshot(Path)}. The graph comes back frozen, with its edges
+     * kept as the given storage says.
+     */
+    public static BookReviewsGraph readSnapshot(final Path path, final EdgeStorage storage) {
+        final BookReviewsGraph graph = GraphSnapshot.read(path, new BookReviewsGraph(), storage);
+        graph.indexLocationNames();
+        graph.aggregateRatings();
+        return graph;
+    }
 
-        final Edge edge = addEdge(EDGE_PUBLISHED_BY, book.isbn(), book.publisher());
-        edge.properties.put("year", book.yearOfPublication());
+    public void writeSnapshot(final Path path) {
+        GraphSnapshot.write(this, path);
     }
 
-    private void addAuthorNode(final Book book) {
-        final Node node = addNodeIfAbsent(book.author(), NODE_AUTHOR);
-        node.properties.put("name", book.author());
-        addEdge(EDGE_WRITTEN_BY, book.isbn(), book.author());
+    private void indexLocationNames() {
+        getNodesByLabel(countryLabel).forEach(n -> countriesByName.put((String) n.getProperty("name"), n));
+        getNodesByLabel(stateLabel).forEach(n -> statesByName.put((String) n.getProperty("name"), n));
+        getNodesByLabel(cityLabel).forEach(n -> citiesByName.put((String) n.getProperty("name"), n));
     }
 
-    private void addBookRating(final BookRating bookRating) {
-        final String userId = buildUserId(bookRating.userId());
-        if (getNode(userId) == null) {
+    /**
+     * Rebuilds the rating aggregates from the reviewed edges, for graphs that were not built
+     * through {@link #addBookRating(BookRating)}.
+     */
+    private void aggregateRatings() {
+        final IntColumn ratings = intColumn(reviewedLabel, "rating");
+
+        for (final Node node : getNodes()) {
+            node.forEachOutgoingEdge(writtenByLabel, e -> bookAuthors.setInt(e.source.index, e.target.index));
+            node.forEachOutgoingEdge(publishedByLabel, e -> bookPublishers.setInt(e.source.index, e.target.index));
+        }
+        for (final Node node : getNodes()) {
+            node.forEachOutgoingEdge(reviewedLabel, e -> aggregateRating(e.target, ratings.getInt(e.ordinal)));
+        }
+    }
+
+    void addBook(final Book book) {
+        final Node bookNode = addBookNode(book);
+        addPublisherNode(book, bookNode);
+        addAuthorNode(book, bookNode);
+    }
+
+    private Node addBookNode(final Book book) {
+        final Node node = addNode(book.isbn(), bookLabel);
+        node.setProperty("title", book.title());
+        return node;
+    }
+
+    private void addPublisherNode(final Book book, final Node bookNode) {
+        final Node node = addNodeIfAbsent(book.publisher(), publisherLabel);
+
+        final Edge edge = addEdge(publishedByLabel, bookNode, node);
+        edge.setProperty("year", book.yearOfPublication());
+        bookPublishers.setInt(bookNode.index, node.index);
+    }
+
+    private void addAuthorNode(final Book book, final Node bookNode) {
+        // Set the name only on a new author, as every write to it updates the name index
+        Node node = getNode(authorLabel, book.author());
+        if (node == null) {
+            node = addNode(book.author(), authorLabel);
+            node.setProperty("name", book.author());
+        }
+        addEdge(writtenByLabel, bookNode, node);
+        bookAuthors.setInt(bookNode.index, node.index);
+    }
+
+    void addBookRating(final BookRating bookRating) {
+        final Node userNode = getNode(userLabel, bookRating.userId());
+        if (userNode == null) {
             return;
         }
-        if (getNode(bookRating.isbn()) == null) {
+        final Node bookNode = getNode(bookLabel, bookRating.isbn());
+        if (bookNode == null) {
             return;
         }
-        final Edge edge = addEdge(EDGE_REVIEWED, userId, bookRating.isbn());
-        edge.properties.put("rating", bookRating.rating());
+        final Edge edge = addEdge(reviewedLabel, userNode, bookNode);
+        edge.setProperty("rating", bookRating.rating());
+        aggregateRating(bookNode, bookRating.rating());
     }
 
-    private void addUserNode(final User user) {
-        final Node userNode = addNode(buildUserId(user), NODE_USER);
-        userNode.properties.put("age", user.age());
+    private void aggregateRating(final Node bookNode, final int rating) {
+        bookRatings.add(bookNode.index, rating);
+        if (bookAuthors.isSet(bookNode.index)) {
+            authorRatings.add(bookAuthors.getInt(bookNode.index), rating);
+        }
+        if (bookPublishers.isSet(bookNode.index)) {
+            publisherRatings.add(bookPublishers.getInt(bookNode.index), rating);
+        }
+    }
+
+    void addUserNode(final User user) {
+        final Node userNode = addNode(user.userId(), userLabel);
+        userNode.setProperty("age", user.age());
 
-        addUserLocation(user);
+        addUserLocation(user, userNode);
     }
 
-    private void addUserLocation(final User user) {
+    private void addUserLocation(final User user, final Node userNode) {
         final List<String> locationTokens = Arrays.stream(user.location().split(","))
                 .map(String::trim)
                 .collect(Collectors.toList());
-        addLocationNodes(locationTokens);
 
-        buildCityId(locationTokens).ifPresent(cityId -> {
-            addEdge(EDGE_IN_CITY, buildUserId(user), cityId);
-        });
-    }
+        final Node countryNode = addCountryIfAbsent(locationTokens);
+        final Node stateNode = addStateIfAbsent(locationTokens, countryNode);
+        final Node cityNode = addCityIfAbsent(locationTokens, stateNode);
 
-    private void addLocationNodes(final List<String> locationTokens) {
-        addCountryIfAbsent(locationTokens);
-        addStateIfAbsent(locationTokens);
-        addCityIfAbsent(locationTokens);
+        if (cityNode != null) {
+            addEdge(inCityLabel, userNode, cityNode);
+        }
     }
 
-    private void addCountryIfAbsent(final List<String> locationTokens) {
-        buildCountryId(locationTokens).ifPresent(countryId -> {
-            if (getNode(countryId) == null) {
-                final Node countryNode = addNode(countryId, NODE_COUNTRY);
-                countryNode.properties.put("name", locationTokens.get(2));
+    /** @return the country node, or null if the location has no country */
+    private Node addCountryIfAbsent(final List<String> locationTokens) {
+        return buildCountryId(locationTokens).map(countryId -> {
+            Node countryNode = getNode(countryLabel, countryId);
+            if (countryNode == null) {
+                countryNode = addNode(countryId, countryLabel);
+                countryNode.setProperty("name", locationTokens.get(2));
                 countriesByName.put(locationTokens.get(2), countryNode);
             }
-        });
+            return countryNode;
+        }).orElse(null);
     }
 
-    private void addStateIfAbsent(final List<String> locationTokens) {
-        buildStateId(locationTokens).ifPresent(stateId -> {
-            if (getNode(stateId) == null) {
-                final Node stateNode = addNode(stateId, NODE_STATE);
-                stateNode.properties.put("name", locationTokens.get(1));
+    /** @return the state node, or null if the location has no state */
+    private Node addStateIfAbsent(final List<String> locationTokens, final Node countryNode) {
+        return buildStateId(locationTokens).map(stateId -> {
+            Node stateNode = getNode(stateLabel, stateId);
+            if (stateNode == null) {
+                stateNode = addNode(stateId, stateLabel);
+                stateNode.setProperty("name", locationTokens.get(1));
                 statesByName.put(locationTokens.get(1), stateNode);
 
-                buildCountryId(locationTokens).ifPresent(countryId -> {
-                    addEdge(EDGE_IN_COUNTRY, stateId, countryId);
-                });
+                if (countryNode != null) {
+                    addEdge(inCountryLabel, stateNode, countryNode);
+                }
             }
-        });
+            return stateNode;
+        }).orElse(null);
     }
 
-    private void addCityIfAbsent(final List<String> locationTokens) {
-        buildCityId(locationTokens).ifPresent(cityId -> {
-            if (getNode(cityId) == null) {
-                final Node cityNode = addNode(cityId, NODE_CITY);
-                cityNode.properties.put("name", locationTokens.get(0));
+    /** @return the city node, or null if the location is empty */
+    private Node addCityIfAbsent(final List<String> locationTokens, final Node stateNode) {
+        return buildCityId(locationTokens).map(cityId -> {
+            Node cityNode = getNode(cityLabel, cityId);
+            if (cityNode == null) {
+                cityNode = addNode(cityId, cityLabel);
+                cityNode.setProperty("name", locationTokens.get(0));
                 citiesByName.put(locationTokens.get(0), cityNode);
 
-                buildStateId(locationTokens).ifPresent(stateId -> {
-                    addEdge(EDGE_IN_STATE, cityId, stateId);
-                });
+                if (stateNode != null) {
+                    addEdge(inStateLabel, cityNode, stateNode);
+                }
             }
-        });
-    }
-
-    private String buildUserId(final User user) {
-        return buildUserId(user.userId());
-    }
-
-    private String buildUserId(final String id) {
-        return "user:" + id;
+            return cityNode;
+        }).orElse(null);
     }
 
     private Optional<String> buildCityId(final List<String> locationTokens) {
@@ -0,0 +1,99 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import com.albertoventurini.graphs.bookreviews.csv.Book;
+import com.albertoventurini.graphs.bookreviews.csv.BookRating;
+import com.albertoventurini.graphs.bookreviews.csv.BookReviewsCsvParser;
+import com.albertoventurini.graphs.bookreviews.csv.User;
+
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.function.Consumer;
+
+/**
+ * Builds a {@link BookReviewsGraph} straight from the CSV files, without materializing
+ * the intermediate lists of books, users and ratings.
+ */
+public class BookReviewsGraphLoader {
+
+    private static final int PIPE_CAPACITY = 64;
+    private static final int PIPE_BATCH_SIZE = 1024;
+
+    private final BookReviewsCsvParser parser;
+
+    public BookReviewsGraphLoader(final BookReviewsCsvParser parser) {
+        this.parser = parser;
+    }
+
+    public BookReviewsGraph load(
+            final String bookFilePath,
+            final String bookRatingFilePath,
+            final String userFilePath) {
+
+        final BookReviewsGraph graph = new BookReviewsGraph();
+
+        parser.parseBooks(bookFilePath, graph::addBook);
+        parser.parseUsers(userFilePath, graph::addUserNode);
+        parser.parseBookRatings(bookRatingFilePath, graph::addBookRating);
+
+        return graph;
+    }
+
+    /**
+     * Parses the three files on the given executor while the calling thread builds the graph.
+     * Parsed records flow to the builder through bounded pipes, so parsing overlaps with node and edge creation
+     * and at most a few batches of records per file are held in memory at any time.
+     * The executor must be able to run three tasks at once.
+     */
+    public BookReviewsGraph loadPipelined(
+            final String bookFilePath,
+            final String bookRatingFilePath,
+            final String userFilePath,
+            final Executor executor) {
+
+        final RecordPipe<Book> books = new RecordPipe<>(PIPE_CAPACITY, PIPE_BATCH_SIZE);
+        final RecordPipe<User> users = new RecordPipe<>(PIPE_CAPACITY, PIPE_BATCH_SIZE);
+        final RecordPipe<BookRating> bookRatings = new RecordPipe<>(PIPE_CAPACITY, PIPE_BATCH_SIZE);
+
+        final List<FutureTask<Void>> producers = List.of(
+                produce(executor, books, pipe -> parser.parseBooks(bookFilePath, pipe)),
+                produce(executor, users, pipe -> parser.parseUsers(userFilePath, pipe)),
+                produce(executor, bookRatings, pipe -> parser.parseBookRatings(bookRatingFilePath, pipe)));
+
+        try {
+            final BookReviewsGraph graph = new BookReviewsGraph();
+
+            books.drain(graph::addBook);
+            users.drain(graph::addUserNode);
+            bookRatings.drain(graph::addBookRating);
+
+            return graph;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while loading graph");
+        } finally {
+            // Unblocks producers that are still waiting on a full pipe if building failed
+            producers.forEach(producer -> producer.cancel(true));
+        }
+    }
+
+    private static <T> FutureTask<Void> produce(
+            final Executor executor,
+            final RecordPipe<T> pipe,
+            final Consumer<RecordPipe<T>> parse) {
+
+        final FutureTask<Void> task = new FutureTask<>(() -> {
+            try {
+                parse.accept(pipe);
+                pipe.close();
+            } catch (Throwable e) {
+                // Errors such as OutOfMemoryError too, or the builder would wait on the pipe forever
+                pipe.fail(e);
+            }
+        }, null);
+
+        executor.execute(task);
+        return task;
+    }
+}
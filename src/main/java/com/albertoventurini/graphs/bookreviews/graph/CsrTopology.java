@@ -0,0 +1,380 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.InvalidSnapshotException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Read-only topology in compressed sparse row (CSR) form, partitioned by edge label.
+ *
+ * No edge objects are kept. For each edge label, a partition stores the index of the target node and the ordinal of
+ * each edge, sorted by source node index, so the outgoing edges of a node are the contiguous range
+ * [outOffsets[n], outOffsets[n + 1]). For incoming lookups it stores the index of the source node and the ordinal
+ * again, sorted by target node index and delimited by inOffsets. Lookups hand out a new {@link Edge} per edge, a
+ * view over those ints and the graph's nodes, whose properties are found by ordinal as for any edge.
+ * Looking up the edges of a node with a given label only touches that label's partition.
+ *
+ * The arrays are int arrays on the heap, or direct buffers outside it; see {@link Graph.EdgeStorage}.
+ */
+class CsrTopology implements Topology {
+
+    /** Fixed-size array of ints, on or off the heap */
+    private abstract static class Ints {
+
+        /** Number of ints read through a heap array at a time when filling a direct buffer from a snapshot */
+        private static final int CHUNK_SIZE = 1 << 14;
+
+        abstract int length();
+
+        abstract int get(int i);
+
+        abstract void set(int i, int value);
+
+        static Ints allocate(final int count, final Graph.EdgeStorage storage) {
+            return storage == Graph.EdgeStorage.OFF_HEAP ? new DirectInts(count) : new HeapInts(count);
+        }
+
+        /** Reads an array written by {@link #write(DataOutputStream)} into the given storage. */
+        static Ints read(final SnapshotInput in, final Graph.EdgeStorage storage) {
+            final int count = in.getInt();
+            if (storage != Graph.EdgeStorage.OFF_HEAP) {
+                final HeapInts ints = new HeapInts(count);
+                in.getInts(ints.values, 0, count);
+                return ints;
+            }
+
+            final DirectInts ints = new DirectInts(count);
+            final int[] chunk = new int[Math.min(count, CHUNK_SIZE)];
+            for (int i = 0; i < count; i += chunk.length) {
+                final int length = Math.min(chunk.length, count - i);
+                in.getInts(chunk, 0, length);
+                ints.values.put(i, chunk, 0, length);
+            }
+            return ints;
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            final int length = length();
+            out.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                out.writeInt(get(i));
+            }
+        }
+    }
+
+    private static final class HeapInts extends Ints {
+        private final int[] values;
+
+        HeapInts(final int count) {
+            values = new int[count];
+        }
+
+        @Override
+        int length() {
+            return values.length;
+        }
+
+        @Override
+        int get(final int i) {
+            return values[i];
+        }
+
+        @Override
+        void set(final int i, final int value) {
+            values[i] = value;
+        }
+    }
+
+    private static final class DirectInts extends Ints {
+        private final IntBuffer values;
+
+        DirectInts(final int count) {
+            if (count > Integer.MAX_VALUE / Integer.BYTES) {
+                throw new IllegalStateException("Too many elements for a direct buffer: " + count);
+            }
+            values = ByteBuffer.allocateDirect(count * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        @Override
+        int length() {
+            return values.capacity();
+        }
+
+        @Override
+        int get(final int i) {
+            return values.get(i);
+        }
+
+        @Override
+        void set(final int i, final int value) {
+            values.put(i, value);
+        }
+    }
+
+    private class Partition {
+        final Label label;
+        final Ints outOffsets;
+        final Ints targets;
+        final Ints outOrdinals;
+        final Ints inOffsets;
+        final Ints sources;
+        final Ints inOrdinals;
+
+        Partition(final Label label, final int nodeCount, final int edgeCount, final Graph.EdgeStorage storage) {
+            this(
+                    label,
+                    Ints.allocate(nodeCount + 1, storage),
+                    Ints.allocate(edgeCount, storage),
+                    Ints.allocate(edgeCount, storage),
+                    Ints.allocate(nodeCount + 1, storage),
+                    Ints.allocate(edgeCount, storage),
+                    Ints.allocate(edgeCount, storage));
+        }
+
+        Partition(
+                final Label label,
+                final Ints outOffsets,
+                final Ints targets,
+                final Ints outOrdinals,
+                final Ints inOffsets,
+                final Ints sources,
+                final Ints inOrdinals) {
+
+            this.label = label;
+            this.outOffsets = outOffsets;
+            this.targets = targets;
+            this.outOrdinals = outOrdinals;
+            this.inOffsets = inOffsets;
+            this.sources = sources;
+            this.inOrdinals = inOrdinals;
+        }
+
+        void write(final DataOutputStream out) throws IOException {
+            out.writeInt(label.id);
+            outOffsets.write(out);
+            targets.write(out);
+            outOrdinals.write(out);
+            inOffsets.write(out);
+            sources.write(out);
+            inOrdinals.write(out);
+        }
+
+        Edge outgoingEdge(final Node source, final int i) {
+            return new Edge(graph, label, outOrdinals.get(i), source, nodes.get(targets.get(i)));
+        }
+
+        Edge incomingEdge(final Node target, final int i) {
+            return new Edge(graph, label, inOrdinals.get(i), nodes.get(sources.get(i)), target);
+        }
+
+        Stream<Edge> outgoingEdges(final Node node) {
+            return IntStream.range(outOffsets.get(node.index), outOffsets.get(node.index + 1))
+                    .mapToObj(i -> outgoingEdge(node, i));
+        }
+
+        Stream<Edge> incomingEdges(final Node node) {
+            return IntStream.range(inOffsets.get(node.index), inOffsets.get(node.index + 1))
+                    .mapToObj(i -> incomingEdge(node, i));
+        }
+
+        void forEachOutgoingEdge(final Node node, final Consumer<Edge> action) {
+            final int to = outOffsets.get(node.index + 1);
+            for (int i = outOffsets.get(node.index); i < to; i++) {
+                action.accept(outgoingEdge(node, i));
+            }
+        }
+
+        void forEachIncomingEdge(final Node node, final Consumer<Edge> action) {
+            final int to = inOffsets.get(node.index + 1);
+            for (int i = inOffsets.get(node.index); i < to; i++) {
+                action.accept(incomingEdge(node, i));
+            }
+        }
+    }
+
+    private final Graph graph;
+
+    /** The nodes of the graph, by index, which the partitions refer to */
+    private final List<Node> nodes;
+
+    /** Partitions indexed by label id; null for labels without edges */
+    private final Partition[] partitions;
+
+    private CsrTopology(final Graph graph, final List<Node> nodes, final int labelCount) {
+        this.graph = graph;
+        this.nodes = nodes;
+        this.partitions = new Partition[labelCount];
+    }
+
+    /** Copies the edges of the given nodes, as seen by the source topology, into CSR form kept in the given storage. */
+    static CsrTopology build(
+            final Graph graph,
+            final List<Node> nodes,
+            final List<Label> labels,
+            final Topology source,
+            final Graph.EdgeStorage storage) {
+
+        final CsrTopology topology = new CsrTopology(graph, nodes, labels.size());
+        final Partition[] partitions = topology.partitions;
+        final int nodeCount = nodes.size();
+
+        final int[] edgeCounts = new int[labels.size()];
+        for (final Node node : nodes) {
+            source.outgoingEdges(node).forEach(e -> edgeCounts[e.label.id]++);
+        }
+        for (int i = 0; i < partitions.length; i++) {
+            if (edgeCounts[i] > 0) {
+                partitions[i] = topology.new Partition(labels.get(i), nodeCount, edgeCounts[i], storage);
+            }
+        }
+
+        // Outgoing edges come in order of source node index, so they are appended as they come, while each
+        // partition counts the incoming edges of each target node.
+        final int[] sizes = new int[partitions.length];
+        for (final Node node : nodes) {
+            source.outgoingEdges(node).forEach(e -> {
+                final Partition partition = partitions[e.label.id];
+                final int i = sizes[e.label.id]++;
+                partition.targets.set(i, e.target.index);
+                partition.outOrdinals.set(i, e.ordinal);
+                partition.inOffsets.set(e.target.index + 1, partition.inOffsets.get(e.target.index + 1) + 1);
+            });
+            for (int p = 0; p < partitions.length; p++) {
+                if (partitions[p] != null) {
+                    partitions[p].outOffsets.set(node.index + 1, sizes[p]);
+                }
+            }
+        }
+
+        for (final Partition partition : partitions) {
+            if (partition != null) {
+                fillIncoming(partition, nodeCount);
+            }
+        }
+
+        return topology;
+    }
+
+    /** Sorts the outgoing edges of the partition by target node index into its incoming arrays. */
+    private static void fillIncoming(final Partition partition, final int nodeCount) {
+        for (int i = 0; i < nodeCount; i++) {
+            partition.inOffsets.set(i + 1, partition.inOffsets.get(i + 1) + partition.inOffsets.get(i));
+        }
+
+        final int[] inPositions = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            inPositions[i] = partition.inOffsets.get(i);
+        }
+        for (int source = 0; source < nodeCount; source++) {
+            final int to = partition.outOffsets.get(source + 1);
+            for (int i = partition.outOffsets.get(source); i < to; i++) {
+                final int position = inPositions[partition.targets.get(i)]++;
+                partition.sources.set(position, source);
+                partition.inOrdinals.set(position, partition.outOrdinals.get(i));
+            }
+        }
+    }
+
+    /** Writes the partitions to a snapshot as they are, for {@link #read} to load without sorting any edge. */
+    void write(final DataOutputStream out) throws IOException {
+        out.writeInt((int) Arrays.stream(partitions).filter(Objects::nonNull).count());
+        for (final Partition partition : partitions) {
+            if (partition != null) {
+                partition.write(out);
+            }
+        }
+    }
+
+    /**
+     * Reads partitions written by {@link #write(DataOutputStream)} into the given storage.
+     * @param labels the labels of the graph, by id
+     * @param labelIds the id in the graph of each label id of the snapshot
+     */
+    static CsrTopology read(
+            final SnapshotInput in,
+            final Graph graph,
+            final List<Node> nodes,
+            final List<Label> labels,
+            final int[] labelIds,
+            final Graph.EdgeStorage storage) {
+
+        final CsrTopology topology = new CsrTopology(graph, nodes, labels.size());
+
+        final int partitionCount = in.getInt();
+        for (int i = 0; i < partitionCount; i++) {
+            final Label label = labels.get(labelIds[in.getInt()]);
+            final Partition partition = topology.new Partition(
+                    label,
+                    Ints.read(in, storage),
+                    Ints.read(in, storage),
+                    Ints.read(in, storage),
+                    Ints.read(in, storage),
+                    Ints.read(in, storage),
+                    Ints.read(in, storage));
+
+            if (partition.outOffsets.length() != nodes.size() + 1 || partition.inOffsets.length() != nodes.size() + 1) {
+                throw new InvalidSnapshotException("Edges of label " + label + " do not match the nodes");
+            }
+            topology.partitions[label.id] = partition;
+        }
+
+        return topology;
+    }
+
+    @Override
+    public void addEdge(final Edge edge) {
+        throw new IllegalStateException("Cannot add edges to a frozen graph");
+    }
+
+    @Override
+    public Stream<Edge> outgoingEdges(final Node node) {
+        return Arrays.stream(partitions).filter(Objects::nonNull).flatMap(p -> p.outgoingEdges(node));
+    }
+
+    @Override
+    public Stream<Edge> outgoingEdges(final Node node, final Label edgeLabel) {
+        final Partition partition = partition(edgeLabel);
+        return partition == null ? Stream.empty() : partition.outgoingEdges(node);
+    }
+
+    @Override
+    public Stream<Edge> incomingEdges(final Node node) {
+        return Arrays.stream(partitions).filter(Objects::nonNull).flatMap(p -> p.incomingEdges(node));
+    }
+
+    @Override
+    public Stream<Edge> incomingEdges(final Node node, final Label edgeLabel) {
+        final Partition partition = partition(edgeLabel);
+        return partition == null ? Stream.empty() : partition.incomingEdges(node);
+    }
+
+    @Override
+    public void forEachOutgoingEdge(final Node node, final Label edgeLabel, final Consumer<Edge> action) {
+        final Partition partition = partition(edgeLabel);
+        if (partition != null) {
+            partition.forEachOutgoingEdge(node, action);
+        }
+    }
+
+    @Override
+    public void forEachIncomingEdge(final Node node, final Label edgeLabel, final Consumer<Edge> action) {
+        final Partition partition = partition(edgeLabel);
+        if (partition != null) {
+            partition.forEachIncomingEdge(node, action);
+        }
+    }
+
+    private Partition partition(final Label label) {
+        return label.id < partitions.length ? partitions[label.id] : null;
+    }
+}
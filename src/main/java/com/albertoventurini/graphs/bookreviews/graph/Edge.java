@@ -1,12 +1,29 @@
 package com.albertoventurini.graphs.bookreviews.graph;
 
+/**
+ * Edge between two nodes. Edges are equal if they have the same label and ordinal, so that edges handed out afresh
+ * by a frozen graph compare equal across lookups.
+ */
 public class Edge extends GraphElement {
     public final Node source;
     public final Node target;
 
-    public Edge(final String label, final Node source, final Node target) {
-        super(label);
+    Edge(final Graph graph, final Label label, final int ordinal, final Node source, final Node target) {
+        super(graph, label, ordinal);
         this.source = source;
         this.target = target;
     }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final Edge edge = (Edge) o;
+        return label == edge.label && ordinal == edge.ordinal && graph == edge.graph;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * label.id + ordinal;
+    }
 }
@@ -1,80 +1,462 @@
 package com.albertoventurini.graphs.bookreviews.graph;
 
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.AmbiguousNodeException;
 import com.albertoventurini.graphs.bookreviews.graph.exceptions.DuplicateNodeException;
 import com.albertoventurini.graphs.bookreviews.graph.exceptions.NodeNotFoundException;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public class Graph {
 
-    private final Map<String, Node> nodeIdToNode = new HashMap<>();
+    private final MapSet<Label, Node> nodeLabelToNodes = new MapSet<>();
 
-    private final MapSet<String, Node> nodeLabelToNodes = new MapSet<>();
+    private final Map<String, Label> labelsByName = new HashMap<>();
+
+    private final List<Label> labels = new ArrayList<>();
+
+    /** Property tables indexed by label id */
+    private final List<PropertyTable> propertyTables = new ArrayList<>();
+
+    /** Secondary indexes on node properties by property name, indexed by label id; null for labels without any */
+    private final List<Map<String, PropertyIndex>> propertyIndexes = new ArrayList<>();
+
+    /** Range indexes on int properties by property name, indexed by label id; null for labels without any */
+    private final List<Map<String, RangeIndex>> rangeIndexes = new ArrayList<>();
+
+    private final ArrayList<Node> nodes = new ArrayList<>();
+
+    private final NodeIdIndex nodeIds = new NodeIdIndex(nodes);
+
+    private Topology topology = new ListTopology();
+
+    private boolean frozen = false;
 
     public Node addNode(
             final String id,
             final String label) {
 
-        if (nodeIdToNode.containsKey(id)) {
-            throw new DuplicateNodeException(id);
+        return addNode(id, internLabel(label));
+    }
+
+    public Node addNode(
+            final String id,
+            final Label label) {
+
+        if (nodeIds.get(label, id) >= 0) {
+            throw new DuplicateNodeException(label + ":" + id);
         }
 
-        final Node n = new Node(id, label);
-        nodeIdToNode.put(id, n);
-        nodeLabelToNodes.put(label, n);
-        return n;
+        return createNode(id, label);
     }
 
     public Node addNodeIfAbsent(
             final String id,
             final String label) {
-        Node n = nodeIdToNode.get(id);
+
+        return addNodeIfAbsent(id, internLabel(label));
+    }
+
+    public Node addNodeIfAbsent(
+            final String id,
+            final Label label) {
+        Node n = getNode(label, id);
 
         if (n == null) {
-            n = new Node(id, label);
-            nodeIdToNode.put(id, n);
-            nodeLabelToNodes.put(label, n);
+            n = createNode(id, label);
         }
 
         return n;
     }
 
+    /** Makes room for the given total number of nodes, so that adding them does not grow the node id index. */
+    public void ensureNodeCapacity(final int nodeCount) {
+        nodes.ensureCapacity(nodeCount);
+        nodeIds.ensureCapacity(nodeCount);
+    }
+
+    private Node createNode(final String id, final Label label) {
+        checkNotFrozen();
+
+        final Node n = new Node(this, nodes.size(), propertyTable(label).addRow(), id, label);
+        nodes.add(n);
+        nodeIds.put(n);
+        nodeLabelToNodes.put(label, n);
+        return n;
+    }
+
+    /**
+     * @deprecated ids are only unique per label; look the nodes up with {@link #getNodeOrThrow(Label, String)}
+     * and use {@link #addEdge(Label, Node, Node)}
+     * @throws AmbiguousNodeException if nodes with more than one label have one of the ids
+     */
+    @Deprecated
     public Edge addEdge(
             final String label,
             final String fromNodeId,
             final String toNodeId) {
 
-        final Node fromNode = getNodeOrThrow(fromNodeId);
-        final Node toNode = getNodeOrThrow(toNodeId);
+        return addEdge(internLabel(label), fromNodeId, toNodeId);
+    }
+
+    /**
+     * @deprecated ids are only unique per label; look the nodes up with {@link #getNodeOrThrow(Label, String)}
+     * and use {@link #addEdge(Label, Node, Node)}
+     * @throws AmbiguousNodeException if nodes with more than one label have one of the ids
+     */
+    @Deprecated
+    public Edge addEdge(
+            final Label label,
+            final String fromNodeId,
+            final String toNodeId) {
+
+        return addEdge(label, getNodeOrThrow(fromNodeId), getNodeOrThrow(toNodeId));
+    }
+
+    /**
+     * Adds an edge between nodes that were already looked up, typically through {@link #getNode(Label, String)},
+     * saving the id lookups of the other forms.
+     */
+    public Edge addEdge(
+            final Label label,
+            final Node fromNode,
+            final Node toNode) {
 
-        final Edge e = new Edge(label, fromNode, toNode);
-        fromNode.addOutgoingEdge(e);
-        toNode.addIncomingEdge(e);
+        checkNotFrozen();
+
+        final Edge e = new Edge(this, label, propertyTable(label).addRow(), fromNode, toNode);
+        topology.addEdge(e);
 
         return e;
     }
 
+    /**
+     * Where a frozen graph keeps its edges, as node indexes and ordinals from which a short-lived edge object is
+     * made per edge visited.
+     */
+    public enum EdgeStorage {
+        /** Int arrays on the heap. */
+        HEAP,
+        /** Direct buffers outside the heap, leaving the heap smaller for the garbage collector to manage. */
+        OFF_HEAP
+    }
+
+    /** Same as {@link #freeze(EdgeStorage)} with edges on the heap. */
+    public void freeze() {
+        freeze(EdgeStorage.HEAP);
+    }
+
+    /**
+     * Converts the edges of this graph to a compact, read-only CSR representation, kept as the given storage says.
+     * After this, nodes and edges can no longer be added, and the graph is safe to traverse from several threads,
+     * as long as no properties are written meanwhile. Freezing a frozen graph does nothing.
+     */
+    public void freeze(final EdgeStorage storage) {
+        if (!frozen) {
+            topology = CsrTopology.build(this, nodes, labels, topology, storage);
+            frozen = true;
+        }
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /** Returns the label with the given name, creating it if this graph does not have it yet. */
+    public Label internLabel(final String name) {
+        Label label = labelsByName.get(name);
+
+        if (label == null) {
+            label = new Label(labels.size(), name);
+            labels.add(label);
+            labelsByName.put(name, label);
+            propertyTables.add(new PropertyTable());
+            propertyIndexes.add(null);
+            rangeIndexes.add(null);
+        }
+
+        return label;
+    }
+
+    /** Returns the label with the given name, or null if no element of this graph has ever used it. */
+    public Label getLabel(final String name) {
+        return labelsByName.get(name);
+    }
+
+    /**
+     * Exposes the ids of the nodes with the given label as a read-only property with the given name. The property
+     * reads {@link Node#id()}, so nodes whose ids pack into a key do not keep the id string twice; see
+     * {@link NodeKeys}. Must be declared before the property is set on any node.
+     */
+    public void createIdProperty(final Label label, final String propertyName) {
+        propertyTable(label).setIdProperty(propertyName);
+    }
+
+    public void createIndex(final String label, final String propertyName) {
+        createIndex(internLabel(label), propertyName);
+    }
+
+    /**
+     * Declares a secondary index on a property of the nodes with the given label, so that
+     * {@link #findNodes(Label, String, Object)} can look nodes up by value without scanning the label.
+     * Nodes that already hold the property are indexed straight away; the index then follows every later write
+     * to the property. Declaring the same index twice has no effect.
+     */
+    public void createIndex(final Label label, final String propertyName) {
+        Map<String, PropertyIndex> indexes = propertyIndexes.get(label.id);
+        if (indexes == null) {
+            indexes = new HashMap<>();
+            propertyIndexes.set(label.id, indexes);
+        } else if (indexes.containsKey(propertyName)) {
+            return;
+        }
+
+        final PropertyIndex index = new PropertyIndex();
+        for (final Node node : getNodesByLabel(label)) {
+            final Object value = node.getProperty(propertyName);
+            if (value != null) {
+                index.add(value, node);
+            }
+        }
+        indexes.put(propertyName, index);
+    }
+
+    public List<Node> findNodes(final String label, final String propertyName, final Object value) {
+        final Label l = getLabel(label);
+        return l == null ? List.of() : findNodes(l, propertyName, value);
+    }
+
+    /**
+     * Returns the nodes with the given label whose property equals the given value, in the order they were indexed.
+     * @throws IllegalStateException if no index was declared on the property
+     */
+    public List<Node> findNodes(final Label label, final String propertyName, final Object value) {
+        final PropertyIndex index = propertyIndex(label, propertyName);
+        if (index == null) {
+            throw new IllegalStateException("No index on property " + propertyName + " of label " + label);
+        }
+        return index.get(value);
+    }
+
+    public void createRangeIndex(final String label, final String propertyName) {
+        createRangeIndex(internLabel(label), propertyName);
+    }
+
+    /**
+     * Declares a range index on an int property of the nodes and edges with the given label, used by
+     * {@link Query.Nodes#whereBetween(String, int, int)} and {@link Query.Relationships#whereBetween(String, int, int)}
+     * when they filter a whole label. The index is built on first use. Declaring the same index twice has no effect.
+     */
+    public void createRangeIndex(final Label label, final String propertyName) {
+        Map<String, RangeIndex> indexes = rangeIndexes.get(label.id);
+        if (indexes == null) {
+            indexes = new HashMap<>();
+            rangeIndexes.set(label.id, indexes);
+        }
+        indexes.putIfAbsent(propertyName, new RangeIndex(this, label, propertyName));
+    }
+
+    /** Returns the range index on the given property, or null if none was declared. */
+    RangeIndex rangeIndex(final Label label, final String propertyName) {
+        final Map<String, RangeIndex> indexes = rangeIndexes.get(label.id);
+        return indexes == null ? null : indexes.get(propertyName);
+    }
+
+    private PropertyIndex propertyIndex(final Label label, final String propertyName) {
+        final Map<String, PropertyIndex> indexes = propertyIndexes.get(label.id);
+        return indexes == null ? null : indexes.get(propertyName);
+    }
+
+    /** Writes a property of the given element, keeping the index on the property up to date, if any. */
+    void setProperty(final GraphElement element, final String name, final Object value) {
+        final PropertyTable table = propertyTable(element.label);
+        if (name.equals(table.idProperty())) {
+            throw new IllegalArgumentException("Property " + name + " is the id of the node and cannot be set");
+        }
+        final PropertyIndex index = element instanceof Node ? propertyIndex(element.label, name) : null;
+
+        if (index != null) {
+            final Object previous = table.get(element.ordinal, name);
+            if (previous != null) {
+                index.remove(previous, (Node) element);
+            }
+        }
+
+        table.set(element.ordinal, name, value);
+
+        if (index != null && value != null) {
+            index.add(value, (Node) element);
+        }
+
+        final RangeIndex rangeIndex = rangeIndex(element.label, name);
+        if (rangeIndex != null) {
+            rangeIndex.invalidate();
+        }
+    }
+
+    PropertyTable propertyTable(final Label label) {
+        return propertyTables.get(label.id);
+    }
+
+    /**
+     * Returns the values of an int property for all elements with the given label, indexed by
+     * {@link GraphElement#ordinal}, so that aggregations can read them without boxing.
+     */
+    IntColumn intColumn(final Label label, final String propertyName) {
+        return propertyTable(label).intColumn(propertyName);
+    }
+
+    Topology topology() {
+        return topology;
+    }
+
+    /** Labels of this graph, by id. */
+    List<Label> labels() {
+        return Collections.unmodifiableList(labels);
+    }
+
+    NodeIdIndex nodeIds() {
+        return nodeIds;
+    }
+
+    /** Adds nodes read from a snapshot, in order of index, leaving the node id index to be read from the snapshot too. */
+    void restoreNodes(final Node[] restored) {
+        checkNotFrozen();
+
+        nodes.ensureCapacity(nodes.size() + restored.length);
+        for (final Node node : restored) {
+            nodes.add(node);
+            nodeLabelToNodes.put(node.label, node);
+        }
+    }
+
+    /** Adds every node to the declared indexes on its properties, in order of {@link Node#index}. */
+    void indexProperties() {
+        for (final Node node : nodes) {
+            final Map<String, PropertyIndex> indexes = propertyIndexes.get(node.label.id);
+            if (indexes != null) {
+                indexes.forEach((name, index) -> {
+                    final Object value = node.getProperty(name);
+                    if (value != null) {
+                        index.add(value, node);
+                    }
+                });
+            }
+        }
+    }
+
+    /** Reads the edges of a snapshot, as {@link CsrTopology#read} does, and freezes the graph with them. */
+    void restoreTopology(final SnapshotInput in, final int[] labelIds, final EdgeStorage storage) {
+        checkNotFrozen();
+
+        topology = CsrTopology.read(in, this, nodes, labels, labelIds, storage);
+        frozen = true;
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("Graph is frozen");
+        }
+    }
+
+    /**
+     * Returns the node with the given id, or null if there is none.
+     * Ids are only unique per label, so this looks the id up under every label.
+     * @deprecated use {@link #getNode(Label, String)}
+     * @throws AmbiguousNodeException if nodes with more than one label have the id
+     */
+    @Deprecated
     public Node getNode(final String id) {
-        return nodeIdToNode.get(id);
+        Node found = null;
+        for (final Label label : labels) {
+            final Node node = getNode(label, id);
+            if (node != null) {
+                if (found != null) {
+                    throw new AmbiguousNodeException(id);
+                }
+                found = node;
+            }
+        }
+        return found;
+    }
+
+    public Node getNode(final String label, final String id) {
+        final Label nodeLabel = getLabel(label);
+        return nodeLabel == null ? null : getNode(nodeLabel, id);
+    }
+
+    /** Returns the node with the given label and id, or null if there is none. */
+    public Node getNode(final Label label, final String id) {
+        final int index = nodeIds.get(label, id);
+        return index < 0 ? null : nodes.get(index);
     }
 
+    /**
+     * @deprecated ids are only unique per label; use {@link #getNode(Label, String)}
+     * @throws AmbiguousNodeException if nodes with more than one label have the id
+     */
+    @Deprecated
     public Optional<Node> getOptionalNode(final String id) {
-        return Optional.ofNullable(nodeIdToNode.get(id));
+        return Optional.ofNullable(getNode(id));
     }
 
+    /**
+     * @deprecated ids are only unique per label; use {@link #getNodeOrThrow(Label, String)}
+     * @throws AmbiguousNodeException if nodes with more than one label have the id
+     */
+    @Deprecated
     public Node getNodeOrThrow(final String id) {
-        final Node node = nodeIdToNode.get(id);
+        final Node node = getNode(id);
         if (node == null) {
             throw new NodeNotFoundException(id);
         }
         return node;
     }
 
+    public Node getNodeOrThrow(final Label label, final String id) {
+        final Node node = getNode(label, id);
+        if (node == null) {
+            throw new NodeNotFoundException(label + ":" + id);
+        }
+        return node;
+    }
+
     public Set<Node> getNodesByLabel(final String label) {
+        return getNodesByLabel(getLabel(label));
+    }
+
+    public Set<Node> getNodesByLabel(final Label label) {
         return nodeLabelToNodes.get(label);
     }
 
+    public Stream<Edge> getEdgesByLabel(final String label) {
+        return getEdgesByLabel(getLabel(label));
+    }
+
+    /** Returns the edges with the given label, grouped by source node. */
+    public Stream<Edge> getEdgesByLabel(final Label label) {
+        return nodes.stream().flatMap(n -> n.outgoingEdges(label));
+    }
+
+    /** Returns the nodes and then the edges with the given label. */
+    Stream<GraphElement> getElementsByLabel(final Label label) {
+        return Stream.concat(getNodesByLabel(label).stream(), getEdgesByLabel(label));
+    }
+
+    /** Indexes of the nodes with the given label, in no particular order. */
+    int[] nodeIndexes(final Label label) {
+        return getNodesByLabel(label).stream().mapToInt(n -> n.index).toArray();
+    }
+
+    /** Returns all nodes, ordered by {@link Node#index}. */
+    public List<Node> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
 }
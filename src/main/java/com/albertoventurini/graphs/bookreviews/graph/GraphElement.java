@@ -1,14 +1,55 @@
 package com.albertoventurini.graphs.bookreviews.graph;
 
-import java.util.HashMap;
 import java.util.Map;
 
-/** Represents a graph element with a label and key-value properties */
+/**
+ * Represents a graph element with a label and key-value properties.
+ * Property values live in the graph's columnar store for the element's label, at the element's ordinal.
+ */
 public class GraphElement {
-    public final String label;
-    public final Map<String, Object> properties = new HashMap<>();
+    public final Label label;
 
-    public GraphElement(final String label) {
+    /** Dense index of this element among the elements of its graph that share its label */
+    public final int ordinal;
+
+    final Graph graph;
+
+    GraphElement(final Graph graph, final Label label, final int ordinal) {
+        this.graph = graph;
         this.label = label;
+        this.ordinal = ordinal;
+    }
+
+    /** Returns the value of the given property, or null if it is not set. */
+    public Object getProperty(final String name) {
+        return graph.propertyTable(label).get(ordinal, name);
+    }
+
+    public boolean hasProperty(final String name) {
+        return graph.propertyTable(label).isSet(ordinal, name);
+    }
+
+    /**
+     * Returns the value of an int property without boxing it.
+     * @throws java.util.NoSuchElementException if the property is not set
+     * @throws IllegalStateException if the property holds values other than ints
+     */
+    public int getInt(final String name) {
+        return graph.propertyTable(label).intColumn(name).getInt(ordinal);
+    }
+
+    /** Whether the given property holds an int between from and to, both inclusive. */
+    public boolean isIntBetween(final String name, final int from, final int to) {
+        return graph.propertyTable(label).isIntBetween(ordinal, name, from, to);
+    }
+
+    /** Sets the value of the given property; setting it to null removes it. */
+    public void setProperty(final String name, final Object value) {
+        graph.setProperty(this, name, value);
+    }
+
+    /** Returns a read-only copy of all the properties that are set on this element. */
+    public Map<String, Object> getProperties() {
+        return graph.propertyTable(label).row(ordinal);
     }
 }
@@ -0,0 +1,258 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.InvalidSnapshotException;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary snapshot of a {@link Graph}, so that a built graph can be reloaded without re-parsing its sources.
+ *
+ * The file starts with a fixed-size header (magic number, format version, payload length and CRC32 of the payload),
+ * followed by the payload, which holds the graph in the form it has in memory: the label table, the node table as
+ * arrays of label ids, ordinals and packed ids, the node id index, the property columns of each label and the CSR
+ * arrays of each edge label. Loading copies those arrays out of the mapped file in bulk, without adding any node or
+ * edge one by one, and yields a frozen graph.
+ * Files larger than 2GB are mapped in segments.
+ * Snapshots with a different version or a mismatching checksum are rejected on load.
+ */
+public class GraphSnapshot {
+
+    private static final int MAGIC = 0x42524753;
+    /** Version 4: arrays of the frozen graph rather than a list of nodes and edges */
+    private static final int VERSION = 4;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+    private static final byte TYPE_STRING = 5;
+
+    /**
+     * Writes the graph to the given file. A graph that is not frozen is written as it would be once frozen.
+     * The snapshot is first written to a sibling temporary file, which then replaces the target.
+     */
+    public static void write(final Graph graph, final Path path) {
+        final Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        try (final FileChannel channel = FileChannel.open(temporaryPath,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+
+            channel.position(HEADER_SIZE);
+
+            final CRC32 checksum = new CRC32();
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new CheckedOutputStream(Channels.newOutputStream(channel), checksum), 1 << 16));
+            writePayload(graph, out);
+            out.flush();
+
+            // DataOutputStream counts the bytes written in an int, which overflows past 2GB
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                    .putInt(MAGIC)
+                    .putInt(VERSION)
+                    .putLong(channel.position() - HEADER_SIZE)
+                    .putLong(checksum.getValue())
+                    .flip();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing snapshot " + path, e);
+        }
+
+        try {
+            Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing snapshot " + path, e);
+        }
+    }
+
+    /** Same as {@link #read(Path, Graph, Graph.EdgeStorage)} with edges on the heap. */
+    public static <G extends Graph> G read(final Path path, final G graph) {
+        return read(path, graph, Graph.EdgeStorage.HEAP);
+    }
+
+    /**
+     * Memory-maps the given snapshot and loads it into an empty graph, which is then frozen with its edges kept as
+     * the given storage says. Property indexes declared on the graph beforehand are filled in.
+     * @return the given graph
+     */
+    public static <G extends Graph> G read(final Path path, final G graph, final Graph.EdgeStorage storage) {
+        final SnapshotInput in;
+        try {
+            in = SnapshotInput.map(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading snapshot " + path, e);
+        }
+
+        if (in.size() < HEADER_SIZE) {
+            throw new InvalidSnapshotException("Invalid snapshot size " + in.size() + ": " + path);
+        }
+        if (in.getInt() != MAGIC) {
+            throw new InvalidSnapshotException("Not a graph snapshot: " + path);
+        }
+        final int version = in.getInt();
+        if (version != VERSION) {
+            throw new InvalidSnapshotException("Unsupported snapshot version " + version + ": " + path);
+        }
+        final long payloadLength = in.getLong();
+        final long expectedChecksum = in.getLong();
+        if (payloadLength != in.remaining()) {
+            throw new InvalidSnapshotException("Truncated snapshot: " + path);
+        }
+        if (in.checksum() != expectedChecksum) {
+            throw new InvalidSnapshotException("Snapshot checksum mismatch: " + path);
+        }
+
+        readPayload(in, graph, storage);
+        return graph;
+    }
+
+    private static void writePayload(final Graph graph, final DataOutputStream out) throws IOException {
+        final List<Label> labels = graph.labels();
+        out.writeInt(labels.size());
+        for (final Label label : labels) {
+            writeString(label.name, out);
+        }
+
+        final List<Node> nodes = graph.getNodes();
+        out.writeInt(nodes.size());
+        for (final Node node : nodes) {
+            out.writeInt(node.label.id);
+        }
+        for (final Node node : nodes) {
+            out.writeInt(node.ordinal);
+        }
+        for (final Node node : nodes) {
+            out.writeLong(node.key);
+        }
+        for (final Node node : nodes) {
+            if (node.key == NodeKeys.NONE) {
+                writeString(node.id(), out);
+            }
+        }
+        graph.nodeIds().write(out);
+
+        for (final Label label : labels) {
+            graph.propertyTable(label).write(out);
+        }
+
+        final CsrTopology topology = graph.topology() instanceof CsrTopology
+                ? (CsrTopology) graph.topology()
+                : CsrTopology.build(graph, nodes, labels, graph.topology(), Graph.EdgeStorage.HEAP);
+        topology.write(out);
+    }
+
+    private static void readPayload(final SnapshotInput in, final Graph graph, final Graph.EdgeStorage storage) {
+        if (!graph.getNodes().isEmpty()) {
+            throw new IllegalStateException("Cannot read a snapshot into a graph with nodes");
+        }
+
+        // The graph may already have labels of its own, so the ids in the snapshot are mapped to the graph's
+        final int[] labelIds = new int[in.getInt()];
+        boolean sameLabelIds = true;
+        for (int i = 0; i < labelIds.length; i++) {
+            labelIds[i] = graph.internLabel(in.getString()).id;
+            sameLabelIds &= labelIds[i] == i;
+        }
+        final List<Label> labels = graph.labels();
+
+        final int nodeCount = in.getInt();
+        final int[] nodeLabels = new int[nodeCount];
+        final int[] ordinals = new int[nodeCount];
+        final long[] keys = new long[nodeCount];
+        in.getInts(nodeLabels, 0, nodeCount);
+        in.getInts(ordinals, 0, nodeCount);
+        in.getLongs(keys, 0, nodeCount);
+
+        final Node[] nodes = new Node[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            final String unpackedId = keys[i] == NodeKeys.NONE ? in.getString() : null;
+            nodes[i] = new Node(graph, i, ordinals[i], keys[i], unpackedId, labels.get(labelIds[nodeLabels[i]]));
+        }
+        graph.restoreNodes(nodes);
+
+        // Slot keys of ids that do not pack mix in the label id, so the index is only reused if label ids match
+        if (sameLabelIds) {
+            graph.nodeIds().read(in);
+        } else {
+            NodeIdIndex.skip(in);
+            graph.nodeIds().ensureCapacity(nodeCount);
+            for (final Node node : nodes) {
+                graph.nodeIds().put(node);
+            }
+        }
+
+        for (final int labelId : labelIds) {
+            graph.propertyTable(labels.get(labelId)).read(in);
+        }
+        graph.indexProperties();
+
+        graph.restoreTopology(in, labelIds, storage);
+    }
+
+    static void writeValue(final Object value, final DataOutputStream out) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            writeString((String) value, out);
+        } else {
+            throw new IllegalArgumentException("Unsupported property type " + value.getClass().getName());
+        }
+    }
+
+    static Object readValue(final SnapshotInput in) {
+        final byte type = in.get();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_INT:
+                return in.getInt();
+            case TYPE_LONG:
+                return in.getLong();
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(in.getLong());
+            case TYPE_BOOLEAN:
+                return in.get() != 0;
+            case TYPE_STRING:
+                return in.getString();
+            default:
+                throw new InvalidSnapshotException("Unknown property type " + type);
+        }
+    }
+
+    /** Writes the length of the string in UTF-8, then its bytes, as {@link SnapshotInput#getString()} reads it. */
+    static void writeString(final String value, final DataOutputStream out) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,89 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.NoSuchElementException;
+
+/** Property column holding unboxed ints, with a bitset marking which ordinals have a value. */
+class IntColumn extends PropertyColumn {
+
+    private int[] values;
+    private final BitSet present;
+
+    IntColumn() {
+        this(new int[16], new BitSet());
+    }
+
+    private IntColumn(final int[] values, final BitSet present) {
+        this.values = values;
+        this.present = present;
+    }
+
+    /** Reads a column written by {@link #write(DataOutputStream)}: its values, then the words of its bitset. */
+    static IntColumn read(final SnapshotInput in) {
+        final int[] values = new int[in.getInt()];
+        in.getInts(values, 0, values.length);
+        final long[] words = new long[in.getInt()];
+        in.getLongs(words, 0, words.length);
+        return new IntColumn(values, BitSet.valueOf(words));
+    }
+
+    @Override
+    void write(final DataOutputStream out) throws IOException {
+        final int length = length();
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+        final long[] words = present.toLongArray();
+        out.writeInt(words.length);
+        for (final long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    @Override
+    boolean isSet(final int ordinal) {
+        return present.get(ordinal);
+    }
+
+    @Override
+    Object get(final int ordinal) {
+        return isSet(ordinal) ? values[ordinal] : null;
+    }
+
+    int getInt(final int ordinal) {
+        if (!isSet(ordinal)) {
+            throw new NoSuchElementException("No value at ordinal " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    @Override
+    PropertyColumn set(final int ordinal, final Object value) {
+        if (value == null) {
+            present.clear(ordinal);
+            return this;
+        } else if (!(value instanceof Integer)) {
+            return ObjectColumn.copyOf(this).set(ordinal, value);
+        }
+
+        setInt(ordinal, (Integer) value);
+        return this;
+    }
+
+    void setInt(final int ordinal, final int value) {
+        if (ordinal >= values.length) {
+            values = Arrays.copyOf(values, Math.max(ordinal + 1, values.length * 2));
+        }
+        values[ordinal] = value;
+        present.set(ordinal);
+    }
+
+    /** Number of ordinals up to and including the highest one with a value */
+    int length() {
+        return present.length();
+    }
+}
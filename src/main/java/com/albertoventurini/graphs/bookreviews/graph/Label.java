@@ -0,0 +1,22 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+/**
+ * An interned node or edge label.
+ * Each graph holds exactly one Label per label name, so labels of the same graph can be compared by identity,
+ * and their ids are small integers suitable for indexing arrays.
+ */
+public class Label {
+
+    public final int id;
+    public final String name;
+
+    Label(final int id, final String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
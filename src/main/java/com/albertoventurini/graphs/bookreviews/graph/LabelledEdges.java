@@ -0,0 +1,61 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The edges of one node in one direction, grouped by edge label.
+ * A node rarely has edges with more than a handful of labels, so groups are found by a linear scan over label ids.
+ */
+class LabelledEdges {
+
+    private int[] labelIds = new int[0];
+    private List<Edge>[] groups = newGroups(0);
+
+    void add(final Edge edge) {
+        int group = indexOf(edge.label);
+
+        if (group < 0) {
+            group = labelIds.length;
+            labelIds = Arrays.copyOf(labelIds, group + 1);
+            groups = Arrays.copyOf(groups, group + 1);
+            labelIds[group] = edge.label.id;
+            groups[group] = new ArrayList<>(2);
+        }
+
+        groups[group].add(edge);
+    }
+
+    Stream<Edge> stream() {
+        return Arrays.stream(groups).flatMap(List::stream);
+    }
+
+    Stream<Edge> stream(final Label label) {
+        final int group = indexOf(label);
+        return group < 0 ? Stream.empty() : groups[group].stream();
+    }
+
+    void forEach(final Label label, final Consumer<Edge> action) {
+        final int group = indexOf(label);
+        if (group >= 0) {
+            groups[group].forEach(action);
+        }
+    }
+
+    private int indexOf(final Label label) {
+        for (int i = 0; i < labelIds.length; i++) {
+            if (labelIds[i] == label.id) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static List<Edge>[] newGroups(final int size) {
+        return (List<Edge>[]) new List[size];
+    }
+}
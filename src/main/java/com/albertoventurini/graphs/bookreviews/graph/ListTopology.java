@@ -0,0 +1,76 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/** Mutable topology that keeps the outgoing and incoming edges of each node, grouped by edge label. */
+class ListTopology implements Topology {
+
+    private final List<LabelledEdges> outgoingEdges = new ArrayList<>();
+    private final List<LabelledEdges> incomingEdges = new ArrayList<>();
+
+    @Override
+    public void addEdge(final Edge edge) {
+        edgesOf(outgoingEdges, edge.source).add(edge);
+        edgesOf(incomingEdges, edge.target).add(edge);
+    }
+
+    @Override
+    public Stream<Edge> outgoingEdges(final Node node) {
+        final LabelledEdges edges = find(outgoingEdges, node);
+        return edges == null ? Stream.empty() : edges.stream();
+    }
+
+    @Override
+    public Stream<Edge> outgoingEdges(final Node node, final Label edgeLabel) {
+        final LabelledEdges edges = find(outgoingEdges, node);
+        return edges == null ? Stream.empty() : edges.stream(edgeLabel);
+    }
+
+    @Override
+    public Stream<Edge> incomingEdges(final Node node) {
+        final LabelledEdges edges = find(incomingEdges, node);
+        return edges == null ? Stream.empty() : edges.stream();
+    }
+
+    @Override
+    public Stream<Edge> incomingEdges(final Node node, final Label edgeLabel) {
+        final LabelledEdges edges = find(incomingEdges, node);
+        return edges == null ? Stream.empty() : edges.stream(edgeLabel);
+    }
+
+    @Override
+    public void forEachOutgoingEdge(final Node node, final Label edgeLabel, final Consumer<Edge> action) {
+        final LabelledEdges edges = find(outgoingEdges, node);
+        if (edges != null) {
+            edges.forEach(edgeLabel, action);
+        }
+    }
+
+    @Override
+    public void forEachIncomingEdge(final Node node, final Label edgeLabel, final Consumer<Edge> action) {
+        final LabelledEdges edges = find(incomingEdges, node);
+        if (edges != null) {
+            edges.forEach(edgeLabel, action);
+        }
+    }
+
+    private static LabelledEdges edgesOf(final List<LabelledEdges> edgesByNode, final Node node) {
+        while (edgesByNode.size() <= node.index) {
+            edgesByNode.add(null);
+        }
+
+        LabelledEdges edges = edgesByNode.get(node.index);
+        if (edges == null) {
+            edges = new LabelledEdges();
+            edgesByNode.set(node.index, edges);
+        }
+        return edges;
+    }
+
+    private static LabelledEdges find(final List<LabelledEdges> edgesByNode, final Node node) {
+        return node.index < edgesByNode.size() ? edgesByNode.get(node.index) : null;
+    }
+}
@@ -1,24 +1,44 @@
 package com.albertoventurini.graphs.bookreviews.graph;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 public class Node extends GraphElement {
 
-    public final String id;
-    public final List<Edge> outgoingEdges;
-    public final List<Edge> incomingEdges;
+    /** Dense index of this node within its graph, from 0 to the number of nodes */
+    public final int index;
 
-    public Node(final String id, final String label) {
-        super(label);
-        this.id = id;
+    /** Id of this node packed by {@link NodeKeys}, or {@link NodeKeys#NONE} if it does not pack */
+    final long key;
 
-        outgoingEdges = new ArrayList<>();
-        incomingEdges = new ArrayList<>();
+    /** Id of this node if it does not pack, null otherwise */
+    private final String unpackedId;
+
+    Node(final Graph graph, final int index, final int ordinal, final String id, final Label label) {
+        this(graph, index, ordinal, NodeKeys.encode(id), id, label);
+    }
+
+    /** Creates a node whose id has already been packed, or not, as {@link NodeKeys#encode(String)} does. */
+    Node(
+            final Graph graph,
+            final int index,
+            final int ordinal,
+            final long key,
+            final String unpackedId,
+            final Label label) {
+
+        super(graph, label, ordinal);
+        this.index = index;
+        this.key = key;
+        this.unpackedId = key == NodeKeys.NONE ? unpackedId : null;
+    }
+
+    /** Id of this node, unique among the nodes with the same label. A packed id is decoded on each call. */
+    public String id() {
+        return unpackedId != null ? unpackedId : NodeKeys.decode(key);
     }
 
     @Override
@@ -26,45 +46,90 @@ public class Node extends GraphElement {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         final Node node = (Node) o;
-        return Objects.equals(id, node.id);
+        return label == node.label && key == node.key && (unpackedId == null || unpackedId.equals(node.unpackedId));
     }
 
+    /** Same as {@code Objects.hash(id())}, without decoding a packed id. */
     @Override
     public int hashCode() {
-        return Objects.hash(id);
+        return 31 + (unpackedId != null ? unpackedId.hashCode() : NodeKeys.hashCode(key));
     }
 
     @Override
-    public String toString() {
-        return "Node{" +
-                "label='" + label + '\'' +
-                ", id='" + id + '\'' +
-                ", properties=" + properties +
-                '}';
+    public Object getProperty(final String name) {
+        return isIdProperty(name) ? id() : super.getProperty(name);
+    }
+
+    @Override
+    public boolean hasProperty(final String name) {
+        return isIdProperty(name) || super.hasProperty(name);
+    }
+
+    /** Returns a read-only copy of all the properties that are set on this node, the id property first if any. */
+    @Override
+    public Map<String, Object> getProperties() {
+        final String idProperty = graph.propertyTable(label).idProperty();
+        if (idProperty == null) {
+            return super.getProperties();
+        }
+
+        final Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put(idProperty, id());
+        properties.putAll(super.getProperties());
+        return Collections.unmodifiableMap(properties);
     }
 
-    void addOutgoingEdge(final Edge r) {
-        outgoingEdges.add(r);
+    private boolean isIdProperty(final String name) {
+        return name.equals(graph.propertyTable(label).idProperty());
     }
 
-    void addIncomingEdge(final Edge r) {
-        incomingEdges.add(r);
+    @Override
+    public String toString() {
+        return "Node{" +
+                "label='" + label + '\'' +
+                ", id='" + id() + '\'' +
+                ", properties=" + getProperties() +
+                '}';
     }
 
     Stream<Edge> outgoingEdges() {
-        return outgoingEdges.stream();
+        return graph.topology().outgoingEdges(this);
     }
 
     Stream<Edge> outgoingEdges(final String edgeLabel) {
-        return outgoingEdges.stream().filter(e -> e.label.equals(edgeLabel));
+        return outgoingEdges(graph.getLabel(edgeLabel));
+    }
+
+    /** Returns the outgoing edges with the given label; a null label matches no edges. */
+    Stream<Edge> outgoingEdges(final Label edgeLabel) {
+        return edgeLabel == null ? Stream.empty() : graph.topology().outgoingEdges(this, edgeLabel);
     }
 
     Stream<Edge> incomingEdges() {
-        return incomingEdges.stream();
+        return graph.topology().incomingEdges(this);
     }
 
     Stream<Edge> incomingEdges(final String edgeLabel) {
-        return incomingEdges.stream().filter(e -> e.label.equals(edgeLabel));
+        return incomingEdges(graph.getLabel(edgeLabel));
+    }
+
+    /** Returns the incoming edges with the given label; a null label matches no edges. */
+    Stream<Edge> incomingEdges(final Label edgeLabel) {
+        return edgeLabel == null ? Stream.empty() : graph.topology().incomingEdges(this, edgeLabel);
+    }
+
+    /** Like {@link #outgoingEdges(Label)}, for loops that visit many nodes and would pay for a stream per node. */
+    void forEachOutgoingEdge(final Label edgeLabel, final Consumer<Edge> action) {
+        if (edgeLabel != null) {
+            graph.topology().forEachOutgoingEdge(this, edgeLabel, action);
+        }
+    }
+
+    /** Like {@link #incomingEdges(Label)}, for loops that visit many nodes and would pay for a stream per node. */
+    void forEachIncomingEdge(final Label edgeLabel, final Consumer<Edge> action) {
+        if (edgeLabel != null) {
+            graph.topology().forEachIncomingEdge(this, edgeLabel, action);
+        }
     }
 
 }
@@ -0,0 +1,172 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.InvalidSnapshotException;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Open-addressing hash index from node keys, each a label and an id unique among the nodes with that label,
+ * to {@link Node#index}. Nodes with different labels can share an id, so keys need no prefix to keep apart.
+ * Each slot holds a long key and the index of its node, plus one so that 0 marks an empty slot, in two arrays:
+ * there is no entry object per node, and the ids themselves are only kept by the nodes.
+ * An id that packs into a long, see {@link NodeKeys}, is its own slot key, so a probe finds it by comparing longs
+ * and only reads the node it returns, to check the label. Any other id is keyed on its hash code mixed with the
+ * label, with the sign bit set so that it cannot match a packed id, and a probe compares the string once the hashes
+ * match. Growing the table moves the stored keys without re-hashing any id.
+ * Slots are probed linearly and the table is kept at most half full.
+ */
+class NodeIdIndex {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+
+    /** Marks the slot key of an id that does not pack, whose low 32 bits hold the hash */
+    private static final long UNPACKED = Long.MIN_VALUE;
+
+    /** The nodes of the graph, by index, whose ids the slots refer to */
+    private final List<Node> nodes;
+
+    private long[] keys;
+    private int[] indexes;
+    private int mask;
+    private int size = 0;
+
+    NodeIdIndex(final List<Node> nodes) {
+        this.nodes = nodes;
+        allocate(MIN_CAPACITY);
+    }
+
+    /** Returns the index of the node with the given label and id, or -1 if there is none. */
+    int get(final Label label, final String id) {
+        final long packed = NodeKeys.encode(id);
+        if (packed != NodeKeys.NONE) {
+            return get(label, packed);
+        }
+
+        final long key = unpackedKey(label, id);
+        for (int slot = slot(key); ; slot = (slot + 1) & mask) {
+            final int index = indexes[slot];
+            if (index == 0) {
+                return -1;
+            }
+            if (keys[slot] == key) {
+                final Node node = nodes.get(index - 1);
+                if (node.label == label && node.id().equals(id)) {
+                    return index - 1;
+                }
+            }
+        }
+    }
+
+    /** Returns the index of the node with the given label and packed id, or -1 if there is none. */
+    int get(final Label label, final long packed) {
+        for (int slot = slot(packed); ; slot = (slot + 1) & mask) {
+            final int index = indexes[slot];
+            if (index == 0) {
+                return -1;
+            }
+            if (keys[slot] == packed && nodes.get(index - 1).label == label) {
+                return index - 1;
+            }
+        }
+    }
+
+    /** Adds the key of the given node; no other node may have the same label and id. */
+    void put(final Node node) {
+        if (size + 1 > indexes.length / 2) {
+            resize(indexes.length * 2);
+        }
+        insert(node.key != NodeKeys.NONE ? node.key : unpackedKey(node.label, node.id()), node.index + 1);
+        size++;
+    }
+
+    /** Makes room for the given number of ids, so that adding them does not grow the table. */
+    void ensureCapacity(final int count) {
+        final long capacity = Math.min(MAX_CAPACITY, Math.max(MIN_CAPACITY, 2L * count));
+        if (capacity > indexes.length) {
+            resize(Integer.highestOneBit((int) capacity - 1) << 1);
+        }
+    }
+
+    /** Writes the table to a snapshot as it is, so that reading it back hashes no id. */
+    void write(final DataOutputStream out) throws IOException {
+        out.writeInt(indexes.length);
+        out.writeInt(size);
+        for (final long key : keys) {
+            out.writeLong(key);
+        }
+        for (final int index : indexes) {
+            out.writeInt(index);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write(DataOutputStream)} in place of this one, which must be empty.
+     * The nodes must have the indexes and labels they had when the table was written.
+     */
+    void read(final SnapshotInput in) {
+        if (size != 0) {
+            throw new IllegalStateException("Cannot read a snapshot into a non-empty index");
+        }
+
+        final int capacity = in.getInt();
+        if (capacity < MIN_CAPACITY || capacity > MAX_CAPACITY || Integer.bitCount(capacity) != 1) {
+            throw new InvalidSnapshotException("Invalid node id index capacity " + capacity);
+        }
+        allocate(capacity);
+        size = in.getInt();
+        in.getLongs(keys, 0, keys.length);
+        in.getInts(indexes, 0, indexes.length);
+    }
+
+    /** Moves past a table written by {@link #write(DataOutputStream)} without reading it. */
+    static void skip(final SnapshotInput in) {
+        final int capacity = in.getInt();
+        in.getInt();
+        in.skip((long) capacity * (Long.BYTES + Integer.BYTES));
+    }
+
+    private void resize(final int capacity) {
+        if (capacity > MAX_CAPACITY) {
+            throw new IllegalStateException("Too many nodes: " + size);
+        }
+
+        final long[] oldKeys = keys;
+        final int[] oldIndexes = indexes;
+        allocate(capacity);
+        for (int slot = 0; slot < oldIndexes.length; slot++) {
+            if (oldIndexes[slot] != 0) {
+                insert(oldKeys[slot], oldIndexes[slot]);
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new long[capacity];
+        indexes = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private void insert(final long key, final int indexPlusOne) {
+        int slot = slot(key);
+        while (indexes[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        indexes[slot] = indexPlusOne;
+    }
+
+    /** Spreads the bits of the key for linear probing to use the low ones. */
+    private int slot(final long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /** Mixes the label into the hash code of the id. */
+    private static long unpackedKey(final Label label, final String id) {
+        final int hash = (id.hashCode() + label.id * 0x85EBCA6B) * 0x9E3779B9;
+        return UNPACKED | (hash & 0xFFFFFFFFL);
+    }
+}
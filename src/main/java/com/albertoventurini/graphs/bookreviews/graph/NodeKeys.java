@@ -0,0 +1,84 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+/**
+ * Packs numeric node ids, such as user ids and ISBN-10/13 codes, into a long, so that nodes and the id index can
+ * hold and compare them without a String.
+ * An id packs if it has 1 to 16 chars, all decimal digits except for an optional trailing 'X' (the ISBN-10 check
+ * digit for 10). The key holds the length in bits 55 to 59, the 'X' flag in bit 54 and the value of the digits
+ * in bits 0 to 53, so leading zeros survive and {@link #decode(long)} gives back the exact id.
+ * Check digits are not verified: any id of that shape packs. Other ids are kept as strings.
+ */
+final class NodeKeys {
+
+    /** Key of an id that does not pack */
+    static final long NONE = -1;
+
+    private static final int MAX_LENGTH = 16;
+    private static final int LENGTH_SHIFT = 55;
+    private static final long X_FLAG = 1L << 54;
+    private static final long VALUE_MASK = X_FLAG - 1;
+
+    private NodeKeys() {
+    }
+
+    /** Returns the key of the given id, or {@link #NONE} if it does not pack. */
+    static long encode(final String id) {
+        final int length = id.length();
+        if (length == 0 || length > MAX_LENGTH) {
+            return NONE;
+        }
+
+        final boolean x = id.charAt(length - 1) == 'X';
+        final int digits = x ? length - 1 : length;
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            final char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return NONE;
+            }
+            value = value * 10 + (c - '0');
+        }
+
+        return ((long) length << LENGTH_SHIFT) | (x ? X_FLAG : 0) | value;
+    }
+
+    /** Returns the id packed in the given key. */
+    static String decode(final long key) {
+        final int length = (int) (key >>> LENGTH_SHIFT);
+        final byte[] chars = new byte[length];
+
+        int digits = length;
+        if ((key & X_FLAG) != 0) {
+            chars[--digits] = 'X';
+        }
+        long value = key & VALUE_MASK;
+        for (int i = digits - 1; i >= 0; i--) {
+            chars[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        return new String(chars, ISO_8859_1);
+    }
+
+    /** Returns the {@link String#hashCode()} of the id packed in the given key, without decoding it. */
+    static int hashCode(final long key) {
+        final int length = (int) (key >>> LENGTH_SHIFT);
+        final boolean x = (key & X_FLAG) != 0;
+        final int digits = x ? length - 1 : length;
+        final long value = key & VALUE_MASK;
+
+        long power = 1;
+        for (int i = 1; i < digits; i++) {
+            power *= 10;
+        }
+
+        int hash = 0;
+        for (int i = 0; i < digits; i++) {
+            hash = 31 * hash + (int) ('0' + value / power % 10);
+            power /= 10;
+        }
+        return x ? 31 * hash + 'X' : hash;
+    }
+}
@@ -0,0 +1,63 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/** Property column holding arbitrary values, used for strings and for properties of mixed types. */
+class ObjectColumn extends PropertyColumn {
+
+    private Object[] values = new Object[16];
+
+    /** Reads a column written by {@link #write(DataOutputStream)}: its length, then a typed value per ordinal. */
+    static ObjectColumn read(final SnapshotInput in) {
+        final ObjectColumn column = new ObjectColumn();
+        column.values = new Object[in.getInt()];
+        for (int i = 0; i < column.values.length; i++) {
+            column.values[i] = GraphSnapshot.readValue(in);
+        }
+        return column;
+    }
+
+    @Override
+    void write(final DataOutputStream out) throws IOException {
+        int length = values.length;
+        while (length > 0 && values[length - 1] == null) {
+            length--;
+        }
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            GraphSnapshot.writeValue(values[i], out);
+        }
+    }
+
+    static ObjectColumn copyOf(final IntColumn column) {
+        final ObjectColumn copy = new ObjectColumn();
+        for (int i = 0; i < column.length(); i++) {
+            copy.set(i, column.get(i));
+        }
+        return copy;
+    }
+
+    @Override
+    boolean isSet(final int ordinal) {
+        return ordinal < values.length && values[ordinal] != null;
+    }
+
+    @Override
+    Object get(final int ordinal) {
+        return ordinal < values.length ? values[ordinal] : null;
+    }
+
+    @Override
+    PropertyColumn set(final int ordinal, final Object value) {
+        if (ordinal >= values.length) {
+            if (value == null) {
+                return this;
+            }
+            values = Arrays.copyOf(values, Math.max(ordinal + 1, values.length * 2));
+        }
+        values[ordinal] = value;
+        return this;
+    }
+}
@@ -0,0 +1,22 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/** Values of one property for all elements sharing a label, indexed by element ordinal. */
+abstract class PropertyColumn {
+
+    abstract boolean isSet(int ordinal);
+
+    /** Returns the value at the given ordinal, or null if it is not set. */
+    abstract Object get(int ordinal);
+
+    /**
+     * Sets the value at the given ordinal; a null value unsets it.
+     * @return the column now holding the value: this column, or a more general one if the value did not fit
+     */
+    abstract PropertyColumn set(int ordinal, Object value);
+
+    /** Writes the column to a snapshot, as read back by the read method of its class. */
+    abstract void write(DataOutputStream out) throws IOException;
+}
@@ -0,0 +1,60 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash index from the values of a node property to the nodes holding them, in the order they were indexed.
+ * A value held by a single node maps straight to that node, so that unique keys such as titles cost no list.
+ * Values are matched with {@link Object#equals(Object)}.
+ */
+class PropertyIndex {
+
+    /** Each value maps to either a Node or a List of at least two nodes. */
+    private final Map<Object, Object> nodesByValue = new HashMap<>();
+
+    void add(final Object value, final Node node) {
+        nodesByValue.merge(value, node, PropertyIndex::append);
+    }
+
+    @SuppressWarnings("unchecked")
+    void remove(final Object value, final Node node) {
+        nodesByValue.computeIfPresent(value, (v, nodes) -> {
+            if (nodes instanceof Node) {
+                return nodes.equals(node) ? null : nodes;
+            }
+            final List<Node> list = (List<Node>) nodes;
+            list.remove(node);
+            return list.size() == 1 ? list.get(0) : list;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Node> get(final Object value) {
+        final Object nodes = nodesByValue.get(value);
+
+        if (nodes == null) {
+            return List.of();
+        } else if (nodes instanceof Node) {
+            return List.of((Node) nodes);
+        }
+
+        return Collections.unmodifiableList((List<Node>) nodes);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object append(final Object nodes, final Object node) {
+        if (nodes instanceof Node) {
+            final List<Node> list = new ArrayList<>(2);
+            list.add((Node) nodes);
+            list.add((Node) node);
+            return list;
+        }
+
+        ((List<Node>) nodes).add((Node) node);
+        return nodes;
+    }
+}
@@ -0,0 +1,146 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Columnar storage for the properties of all the elements sharing a label.
+ * Each element is assigned a dense ordinal within its label, which indexes every column of the table.
+ * A column starts out holding unboxed ints if its first value is an Integer, and is widened to hold
+ * arbitrary objects if a value of another type is stored later.
+ */
+class PropertyTable {
+
+    private final Map<String, PropertyColumn> columns = new LinkedHashMap<>();
+    private int size = 0;
+
+    /** Name of the property that reads the node's id rather than a column, or null if there is none */
+    private String idProperty;
+
+    /** Reserves the ordinal of a new element. */
+    int addRow() {
+        return size++;
+    }
+
+    int size() {
+        return size;
+    }
+
+    String idProperty() {
+        return idProperty;
+    }
+
+    void setIdProperty(final String name) {
+        if (columns.containsKey(name)) {
+            throw new IllegalStateException("Property " + name + " is already stored");
+        }
+        idProperty = name;
+    }
+
+    Object get(final int ordinal, final String name) {
+        final PropertyColumn column = columns.get(name);
+        return column == null ? null : column.get(ordinal);
+    }
+
+    boolean isSet(final int ordinal, final String name) {
+        final PropertyColumn column = columns.get(name);
+        return column != null && column.isSet(ordinal);
+    }
+
+    void set(final int ordinal, final String name, final Object value) {
+        final PropertyColumn column = columns.get(name);
+
+        if (column == null) {
+            if (value != null) {
+                final PropertyColumn newColumn = value instanceof Integer ? new IntColumn() : new ObjectColumn();
+                columns.put(name, newColumn.set(ordinal, value));
+            }
+        } else {
+            final PropertyColumn updated = column.set(ordinal, value);
+            if (updated != column) {
+                columns.put(name, updated);
+            }
+        }
+    }
+
+    /**
+     * Returns the int column with the given name, for reading values without boxing.
+     * A property that has never been set yields an empty column.
+     * @throws IllegalStateException if the property holds values other than ints
+     */
+    IntColumn intColumn(final String name) {
+        final PropertyColumn column = columns.get(name);
+
+        if (column == null) {
+            return new IntColumn();
+        } else if (!(column instanceof IntColumn)) {
+            throw new IllegalStateException("Property " + name + " does not hold int values");
+        }
+
+        return (IntColumn) column;
+    }
+
+    /** Whether the given property holds an int between from and to, both inclusive, without boxing it. */
+    boolean isIntBetween(final int ordinal, final String name, final int from, final int to) {
+        final PropertyColumn column = columns.get(name);
+        if (!(column instanceof IntColumn) || !column.isSet(ordinal)) {
+            return false;
+        }
+        final int value = ((IntColumn) column).getInt(ordinal);
+        return value >= from && value <= to;
+    }
+
+    /**
+     * Writes the table to a snapshot: its number of rows, its id property, if any, and its columns in the order
+     * they were created.
+     */
+    void write(final DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        out.writeBoolean(idProperty != null);
+        if (idProperty != null) {
+            GraphSnapshot.writeString(idProperty, out);
+        }
+
+        out.writeInt(columns.size());
+        for (final Map.Entry<String, PropertyColumn> column : columns.entrySet()) {
+            GraphSnapshot.writeString(column.getKey(), out);
+            out.writeBoolean(column.getValue() instanceof IntColumn);
+            column.getValue().write(out);
+        }
+    }
+
+    /** Reads a table written by {@link #write(DataOutputStream)} into this one, which must have no rows. */
+    void read(final SnapshotInput in) {
+        if (size != 0) {
+            throw new IllegalStateException("Cannot read a snapshot into a table with rows");
+        }
+
+        size = in.getInt();
+        if (in.get() != 0) {
+            final String name = in.getString();
+            if (!name.equals(idProperty)) {
+                setIdProperty(name);
+            }
+        }
+
+        final int columnCount = in.getInt();
+        for (int i = 0; i < columnCount; i++) {
+            final String name = in.getString();
+            columns.put(name, in.get() != 0 ? IntColumn.read(in) : ObjectColumn.read(in));
+        }
+    }
+
+    /** Returns the properties set for the given ordinal, in the order the columns were created. */
+    Map<String, Object> row(final int ordinal) {
+        final Map<String, Object> row = new LinkedHashMap<>();
+        columns.forEach((name, column) -> {
+            if (column.isSet(ordinal)) {
+                row.put(name, column.get(ordinal));
+            }
+        });
+        return Collections.unmodifiableMap(row);
+    }
+}
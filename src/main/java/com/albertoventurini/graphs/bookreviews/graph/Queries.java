@@ -2,7 +2,11 @@ package com.albertoventurini.graphs.bookreviews.graph;
 
 import com.albertoventurini.graphs.bookreviews.Pair;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -10,92 +14,306 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class Queries {
 
     public static List<Pair<String, Integer>> getAuthorsByNumberOfReviews(final BookReviewsGraph graph) {
-        return graph.getNodesByLabel(BookReviewsGraph.NODE_AUTHOR)
+        return graph.getNodesByLabel(graph.authorLabel)
                 .stream()
-                .map(a -> Pair.of((String) a.properties.get("name"), getRatingsByAuthor(a).size()))
+                .map(a -> Pair.of((String) a.getProperty("name"), graph.authorRatings.count(a.index)))
                 .sorted(Comparator.comparingInt(p -> -p.second))
                 .collect(Collectors.toList());
     }
 
     public static LinkedHashMap<String, Double> getAuthorsByAverageRating(final BookReviewsGraph graph) {
-        return graph.getNodesByLabel(BookReviewsGraph.NODE_AUTHOR)
+        return graph.getNodesByLabel(graph.authorLabel)
                 .stream()
-                .map(a -> (String) a.properties.get("name"))
-                .map(a -> Map.entry(a, getAverageRatingsByAuthor(graph, a)))
+                .map(a -> Map.entry((String) a.getProperty("name"), graph.authorRatings.average(a.index)))
                 .sorted(Comparator.comparingDouble(e -> -e.getValue()))
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e1, LinkedHashMap::new));
     }
 
+    /** The k authors with the most reviews, ties broken by name. */
+    public static List<Pair<String, Integer>> getTopAuthorsByNumberOfReviews(final BookReviewsGraph graph, final int k) {
+        return getTopByNumberOfReviews(graph, graph.authorLabel, "name", graph.authorRatings, k);
+    }
+
+    /** The k authors with the highest average rating, ties broken by name. */
+    public static List<Pair<String, Double>> getTopAuthorsByAverageRating(final BookReviewsGraph graph, final int k) {
+        return getTopByAverageRating(graph, graph.authorLabel, "name", graph.authorRatings, k);
+    }
+
+    /** The titles of the k books with the most reviews, ties broken by title. */
+    public static List<Pair<String, Integer>> getTopBooksByNumberOfReviews(final BookReviewsGraph graph, final int k) {
+        return getTopByNumberOfReviews(graph, graph.bookLabel, "title", graph.bookRatings, k);
+    }
+
+    /** The titles of the k books with the highest average rating, ties broken by title. */
+    public static List<Pair<String, Double>> getTopBooksByAverageRating(final BookReviewsGraph graph, final int k) {
+        return getTopByAverageRating(graph, graph.bookLabel, "title", graph.bookRatings, k);
+    }
+
+    private static List<Pair<String, Integer>> getTopByNumberOfReviews(
+            final BookReviewsGraph graph,
+            final Label label,
+            final String nameProperty,
+            final RatingAggregates ratings,
+            final int k) {
+
+        final TopK.IntOrder order = (a, b) -> Integer.compare(ratings.count(b), ratings.count(a));
+        return Arrays.stream(TopK.select(graph.nodeIndexes(label), k, order.thenComparing(byName(graph, nameProperty))))
+                .mapToObj(i -> Pair.of(name(graph, i, nameProperty), ratings.count(i)))
+                .collect(Collectors.toList());
+    }
+
+    private static List<Pair<String, Double>> getTopByAverageRating(
+            final BookReviewsGraph graph,
+            final Label label,
+            final String nameProperty,
+            final RatingAggregates ratings,
+            final int k) {
+
+        final TopK.IntOrder order = (a, b) -> Double.compare(ratings.average(b), ratings.average(a));
+        return Arrays.stream(TopK.select(graph.nodeIndexes(label), k, order.thenComparing(byName(graph, nameProperty))))
+                .mapToObj(i -> Pair.of(name(graph, i, nameProperty), ratings.average(i)))
+                .collect(Collectors.toList());
+    }
+
+    /** Orders node indexes by the given name property, then by index. */
+    private static TopK.IntOrder byName(final Graph graph, final String nameProperty) {
+        final Comparator<String> names = Comparator.nullsLast(Comparator.naturalOrder());
+        return (a, b) -> {
+            final int result = names.compare(name(graph, a, nameProperty), name(graph, b, nameProperty));
+            return result != 0 ? result : Integer.compare(a, b);
+        };
+    }
+
+    private static String name(final Graph graph, final int index, final String nameProperty) {
+        return (String) graph.getNodes().get(index).getProperty(nameProperty);
+    }
+
 //    public static List<Pair<String, Double>> getAuthorsByAverageRating(final BookReviewsGraph graph) {
 //        return graph.getNodesByLabel(BookReviewsGraph.NODE_AUTHOR)
 //                .stream()
-//                .map(a -> (String) a.properties.get("name"))
+//                .map(a -> (String) a.getProperty("name"))
 //                .map(a -> Pair.of(a, getAverageRatingsByAuthor(graph, a)))
 //                .sorted(Comparator.comparingDouble(p -> -p.second))
 //                .collect(Collectors.toList());
 //    }
 
-    private static List<Integer> getRatingsByAuthor(final Node authorNode) {
-        return authorNode
-                .incomingEdges(BookReviewsGraph.EDGE_WRITTEN_BY)
-                .map(e -> e.source)
-                .flatMap(n -> n.incomingEdges(BookReviewsGraph.EDGE_REVIEWED))
-                .map(e -> (int) e.properties.get("rating"))
-                .collect(Collectors.toList());
+    public static double getAverageRatingsByAuthor(final BookReviewsGraph graph, final String author) {
+        return graph.authorRatings.average(graph.getNode(graph.authorLabel, author).index);
     }
 
-    public static double getAverageRatingsByAuthor(final BookReviewsGraph graph, final String author) {
-        return graph.getNode(author).incomingEdges(BookReviewsGraph.EDGE_WRITTEN_BY)
-                .map(e -> e.source)
-                .flatMap(n -> n.incomingEdges(BookReviewsGraph.EDGE_REVIEWED))
-                .mapToInt(e -> (int) e.properties.get("rating"))
-                .average()
-                .orElse(0.0);
+    /**
+     * {@link #getAverageRatingsByAuthor(BookReviewsGraph, String)} for many authors at once, keyed by author in the
+     * order given. Authors that are not in the graph are left out.
+     * The averages are kept up to date as ratings are added, so there is no traversal to share: this is a loop of
+     * one id lookup and one aggregate read per author.
+     */
+    public static Map<String, Double> getAverageRatingsByAuthors(
+            final BookReviewsGraph graph,
+            final Collection<String> authors) {
 
+        final Map<String, Double> averages = new LinkedHashMap<>();
+        for (final String author : authors) {
+            final Node node = graph.getNode(graph.authorLabel, author);
+            if (node != null) {
+                averages.put(author, graph.authorRatings.average(node.index));
+            }
+        }
+        return averages;
     }
 
     public static Set<String> getBooksReviewedByUsersInState(final BookReviewsGraph graph, final String state) {
-        return graph.statesByName.get(state).stream()
-                .flatMap(s -> s.incomingEdges(BookReviewsGraph.EDGE_IN_STATE))
-                .map(e -> e.source)
-                .flatMap(c -> c.incomingEdges(BookReviewsGraph.EDGE_IN_CITY))
-                .map(e -> e.source)
-                .flatMap(u -> u.outgoingEdges(BookReviewsGraph.EDGE_REVIEWED))
-                .map(e -> e.target)
-                .map(b -> (String) b.properties.get("title"))
-                .collect(Collectors.toSet());
+        return getBooksReviewedByUsersInState(new Query(graph), graph, state);
     }
 
     public static Set<String> getBooksReviewedByUsersInCountry(final BookReviewsGraph graph, final String country) {
-        return graph.countriesByName.get(country).stream()
-                .flatMap(c -> c.incomingEdges(BookReviewsGraph.EDGE_IN_COUNTRY))
-                .map(e -> e.source)
-                .flatMap(s -> s.incomingEdges(BookReviewsGraph.EDGE_IN_STATE))
-                .map(e -> e.source)
-                .flatMap(c -> c.incomingEdges(BookReviewsGraph.EDGE_IN_CITY))
-                .map(e -> e.source)
-                .flatMap(u -> u.outgoingEdges(BookReviewsGraph.EDGE_REVIEWED))
-                .map(e -> e.target)
-                .map(b -> (String) b.properties.get("title"))
-                .collect(Collectors.toSet());
+        return getBooksReviewedByUsersInCountry(new Query(graph), graph, country);
+    }
+
+    /**
+     * {@link #getBooksReviewedByUsersInState(BookReviewsGraph, String)} for many states at once, keyed by state in
+     * the order given.
+     */
+    public static Map<String, Set<String>> getBooksReviewedByUsersInStates(
+            final BookReviewsGraph graph,
+            final Collection<String> states) {
+
+        return getBooksReviewedByUsersIn(graph, states, graph.statesByName::get, graph.inStateLabel);
+    }
+
+    /**
+     * {@link #getBooksReviewedByUsersInCountry(BookReviewsGraph, String)} for many countries at once, keyed by
+     * country in the order given.
+     */
+    public static Map<String, Set<String>> getBooksReviewedByUsersInCountries(
+            final BookReviewsGraph graph,
+            final Collection<String> countries) {
+
+        return getBooksReviewedByUsersIn(
+                graph, countries, graph.countriesByName::get, graph.inCountryLabel, graph.inStateLabel);
+    }
+
+    /**
+     * Walks from the locations with each name down to their users, through the given containment edges and then
+     * the cities, and collects the titles of the books those users reviewed.
+     * The users of every name are collected first. Locations form a tree, so a user falls under one name at most,
+     * and the reviewed edges of all the users are then scanned in a single pass. The last name each book was seen
+     * under is kept per node index, so that a book reviewed by many users has its title looked up and hashed only
+     * once per name, with nothing to clear between names.
+     */
+    private static Map<String, Set<String>> getBooksReviewedByUsersIn(
+            final BookReviewsGraph graph,
+            final Collection<String> names,
+            final Function<String, Set<Node>> locationsByName,
+            final Label... containmentLabels) {
+
+        final Map<String, List<Node>> usersByName = new LinkedHashMap<>();
+        for (final String name : names) {
+            if (!usersByName.containsKey(name)) {
+                List<Node> frontier = new ArrayList<>(locationsByName.apply(name));
+                for (final Label label : containmentLabels) {
+                    frontier = sources(frontier, label);
+                }
+                usersByName.put(name, sources(frontier, graph.inCityLabel));
+            }
+        }
+
+        final int[] lastNameByBook = new int[graph.getNodes().size()];
+        Arrays.fill(lastNameByBook, -1);
+        final Map<String, Set<String>> titlesByName = new LinkedHashMap<>();
+
+        int nameId = 0;
+        for (final Map.Entry<String, List<Node>> users : usersByName.entrySet()) {
+            final int id = nameId++;
+            final Set<String> titles = new HashSet<>();
+            for (final Node user : users.getValue()) {
+                user.forEachOutgoingEdge(graph.reviewedLabel, e -> {
+                    if (lastNameByBook[e.target.index] != id) {
+                        lastNameByBook[e.target.index] = id;
+                        titles.add((String) e.target.getProperty("title"));
+                    }
+                });
+            }
+            titlesByName.put(users.getKey(), titles);
+        }
+
+        return titlesByName;
+    }
+
+    /** The sources of the incoming edges of the given nodes with the given label. */
+    private static List<Node> sources(final List<Node> nodes, final Label edgeLabel) {
+        final List<Node> sources = new ArrayList<>();
+        for (final Node node : nodes) {
+            node.forEachIncomingEdge(edgeLabel, e -> sources.add(e.source));
+        }
+        return sources;
+    }
+
+    /**
+     * Runs {@link #getBooksReviewedByUsersInState(BookReviewsGraph, String)} on the given pool.
+     * The graph must be frozen.
+     */
+    public static Set<String> getBooksReviewedByUsersInState(
+            final BookReviewsGraph graph,
+            final String state,
+            final ForkJoinPool pool) {
+
+        return getBooksReviewedByUsersInState(new Query(graph).parallel(pool), graph, state);
+    }
+
+    /**
+     * Runs {@link #getBooksReviewedByUsersInCountry(BookReviewsGraph, String)} on the given pool.
+     * The graph must be frozen.
+     */
+    public static Set<String> getBooksReviewedByUsersInCountry(
+            final BookReviewsGraph graph,
+            final String country,
+            final ForkJoinPool pool) {
+
+        return getBooksReviewedByUsersInCountry(new Query(graph).parallel(pool), graph, country);
+    }
+
+    /**
+     * Locations form a tree, so every state, city and user is reached once; books are reviewed by many users,
+     * and are made distinct before their titles are looked up and hashed.
+     */
+    private static Set<String> getBooksReviewedByUsersInState(
+            final Query query,
+            final BookReviewsGraph graph,
+            final String state) {
+
+        return query
+                .from(graph.statesByName.get(state))
+                .in(BookReviewsGraph.EDGE_IN_STATE).fromNodes()
+                .in(BookReviewsGraph.EDGE_IN_CITY).fromNodes()
+                .out(BookReviewsGraph.EDGE_REVIEWED).toNodes().distinct()
+                .collect(Collectors.mapping(b -> (String) b.getProperty("title"), Collectors.toSet()));
+    }
+
+    private static Set<String> getBooksReviewedByUsersInCountry(
+            final Query query,
+            final BookReviewsGraph graph,
+            final String country) {
+
+        return query
+                .from(graph.countriesByName.get(country))
+                .in(BookReviewsGraph.EDGE_IN_COUNTRY).fromNodes()
+                .in(BookReviewsGraph.EDGE_IN_STATE).fromNodes()
+                .in(BookReviewsGraph.EDGE_IN_CITY).fromNodes()
+                .out(BookReviewsGraph.EDGE_REVIEWED).toNodes().distinct()
+                .collect(Collectors.mapping(b -> (String) b.getProperty("title"), Collectors.toSet()));
     }
 
     public static double getAverageAgeByBookTitle(BookReviewsGraph graph, String bookTitle) {
+        final IntColumn ages = graph.intColumn(graph.userLabel, "age");
         return graph
-                .getNodesByLabel(BookReviewsGraph.NODE_BOOK)
+                .findNodes(graph.bookLabel, "title", bookTitle)
                 .stream()
-                .filter(b -> (b.properties.get("title").equals(bookTitle)))
-                .flatMap(b -> b.incomingEdges(BookReviewsGraph.EDGE_REVIEWED))
+                .flatMap(b -> b.incomingEdges(graph.reviewedLabel))
                 .map(e -> e.source)
-                .filter(u -> u.properties.get("age") != null)
-                .mapToInt(u -> (int) u.properties.get("age"))
+                .filter(u -> ages.isSet(u.ordinal))
+                .mapToInt(u -> ages.getInt(u.ordinal))
                 .average()
                 .orElse(0);
     }
 
+    /**
+     * {@link #getAverageAgeByBookTitle(BookReviewsGraph, String)} for many titles at once, keyed by title in the
+     * order given.
+     */
+    public static Map<String, Double> getAverageAgesByBookTitles(
+            final BookReviewsGraph graph,
+            final Collection<String> bookTitles) {
+
+        final IntColumn ages = graph.intColumn(graph.userLabel, "age");
+        final Map<String, Double> averages = new LinkedHashMap<>();
+        final long[] sumAndCount = new long[2];
+
+        for (final String bookTitle : bookTitles) {
+            if (averages.containsKey(bookTitle)) {
+                continue;
+            }
+
+            sumAndCount[0] = 0;
+            sumAndCount[1] = 0;
+            for (final Node book : graph.findNodes(graph.bookLabel, "title", bookTitle)) {
+                book.forEachIncomingEdge(graph.reviewedLabel, e -> {
+                    if (ages.isSet(e.source.ordinal)) {
+                        sumAndCount[0] += ages.getInt(e.source.ordinal);
+                        sumAndCount[1]++;
+                    }
+                });
+            }
+            averages.put(bookTitle, sumAndCount[1] == 0 ? 0.0 : (double) sumAndCount[0] / sumAndCount[1]);
+        }
+
+        return averages;
+    }
+
 }
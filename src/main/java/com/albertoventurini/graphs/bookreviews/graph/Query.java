@@ -1,79 +1,217 @@
 package com.albertoventurini.graphs.bookreviews.graph;
 
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.AmbiguousNodeException;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
 import java.util.stream.Stream;
 
+/**
+ * Fluent traversal of a graph.
+ * Each step adds to a {@link QueryPlan}, which a terminal operation compiles into a fused {@link Traversal} and runs.
+ * Queries run sequentially unless created through {@link #parallel()}, in which case each step runs on a
+ * ForkJoinPool: the starting elements are split across the pool's workers, and so is the frontier reached
+ * after each hop, since a hop can turn a handful of nodes into millions of edges.
+ * Nodes reached along many paths are expanded once per path; {@link Nodes#distinct()} keeps the fan-out of the
+ * next hop proportional to the number of distinct nodes instead.
+ */
 public class Query {
 
     private final Graph graph;
 
+    /** Pool on which the query runs, or null for a sequential query */
+    private final ForkJoinPool pool;
+
     public Query(final Graph graph) {
+        this(graph, null);
+    }
+
+    private Query(final Graph graph, final ForkJoinPool pool) {
         this.graph = graph;
+        this.pool = pool;
+    }
+
+    /** Returns a query that runs on the common ForkJoinPool. */
+    public Query parallel() {
+        return parallel(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Returns a query that runs on the given pool.
+     * The graph must be frozen, so that no writes can race with the traversal.
+     */
+    public Query parallel(final ForkJoinPool pool) {
+        if (!graph.isFrozen()) {
+            throw new IllegalStateException("Parallel queries require a frozen graph");
+        }
+        return new Query(graph, pool);
     }
 
+    /**
+     * Starts from the node with the given id, if any.
+     * @deprecated ids are only unique per label; use {@link #match(String, String)}
+     * @throws AmbiguousNodeException if nodes with more than one label have the id
+     */
+    @Deprecated
     public Nodes match(final String id) {
-        return new Nodes(graph.getOptionalNode(id).stream());
+        final Optional<Node> node = graph.getOptionalNode(id);
+        return new Nodes(graph, QueryPlan.of(node::stream), pool);
+    }
+
+    /** Starts from the node with the given label and id, if any. */
+    public Nodes match(final String label, final String id) {
+        final Optional<Node> node = Optional.ofNullable(graph.getNode(label, id));
+        return new Nodes(graph, QueryPlan.of(node::stream), pool);
+    }
+
+    /** Starts from the given nodes. */
+    public Nodes from(final Collection<Node> nodes) {
+        return new Nodes(graph, QueryPlan.of(nodes::stream), pool);
     }
 
     public Nodes withLabel(final String label) {
-        return new Nodes(graph.getNodesByLabel(label).stream());
+        return new Nodes(graph, QueryPlan.scanNodes(graph.getLabel(label)), pool);
+    }
+
+    /** Starts from all the edges with the given label. */
+    public Relationships relationships(final String label) {
+        return new Relationships(graph, QueryPlan.scanEdges(graph.getLabel(label)), pool);
+    }
+
+    /** Runs the given computation on the pool, unless the query is sequential or already running there. */
+    private static <T> T execute(final ForkJoinPool pool, final Supplier<T> computation) {
+        if (pool == null || ForkJoinTask.getPool() == pool) {
+            return computation.get();
+        }
+        return pool.submit(computation::get).join();
     }
 
     public static class Nodes {
-        public final Stream<Node> nodes;
+        private final Graph graph;
+        private final QueryPlan plan;
+        private final ForkJoinPool pool;
+
+        public Nodes(final Graph graph, final Stream<Node> nodes) {
+            this(graph, QueryPlan.of(() -> nodes), null);
+        }
 
-        public Nodes(final Stream<Node> nodes) {
-            this.nodes = nodes;
+        Nodes(final Graph graph, final QueryPlan plan, final ForkJoinPool pool) {
+            this.graph = graph;
+            this.plan = plan;
+            this.pool = pool;
         }
 
         public Relationships out(final String relationshipLabel) {
-            return new Relationships(nodes.flatMap(n ->
-                    n.outgoingEdges.stream().filter(r -> r.label.equals(relationshipLabel))));
+            return new Relationships(
+                    graph,
+                    plan.expand(QueryPlan.Direction.OUTGOING, graph.getLabel(relationshipLabel)),
+                    pool);
         }
 
         public Relationships in(final String relationshipLabel) {
-            return new Relationships(nodes.flatMap(n ->
-                    n.incomingEdges.stream().filter(r -> r.label.equals(relationshipLabel))));
+            return new Relationships(
+                    graph,
+                    plan.expand(QueryPlan.Direction.INCOMING, graph.getLabel(relationshipLabel)),
+                    pool);
         }
 
         public Nodes where(final Predicate<Node> predicate) {
-            return new Nodes(nodes.filter(predicate));
+            return new Nodes(graph, plan.filter(predicate), pool);
         }
 
         public <T> Nodes where(final String propertyName, final Class<T> clazz, final Predicate<T> predicate) {
-            return new Nodes(nodes.filter(n -> predicate.test(clazz.cast(n.properties.get(propertyName)))));
+            return where(n -> predicate.test(clazz.cast(n.getProperty(propertyName))));
+        }
+
+        /**
+         * Keeps the nodes whose int property lies between from and to, both inclusive.
+         * Straight after {@link Query#withLabel(String)}, a range index on the property is used if there is one,
+         * and the nodes come in increasing order of the property.
+         */
+        public Nodes whereBetween(final String propertyName, final int from, final int to) {
+            return new Nodes(graph, plan.between(propertyName, from, to), pool);
+        }
+
+        /**
+         * Drops the nodes already reached, so that each node is passed on once however many paths lead to it.
+         * Visited nodes are marked in a bit set over {@link Node#index}, which is cheaper than hashing them.
+         */
+        public Nodes distinct() {
+            return new Nodes(graph, plan.distinct(), pool);
+        }
+
+        /** Collects the nodes, on the query's pool if it is parallel. */
+        @SuppressWarnings("unchecked")
+        public <R> R collect(final Collector<? super Node, ?, R> collector) {
+            return execute(pool, () -> plan.compile(graph, pool).collect((Collector<Object, ?, R>) collector));
         }
 
+        /** Returns the nodes as a stream; in a parallel query, they are all reached before the stream is returned. */
+        @SuppressWarnings("unchecked")
         public Stream<Node> stream() {
-            return nodes;
+            return (Stream<Node>) (Stream<?>) execute(pool, () -> plan.compile(graph, pool).stream());
         }
     }
 
     public static class Relationships {
-        final Stream<Edge> relationships;
+        private final Graph graph;
+        private final QueryPlan plan;
+        private final ForkJoinPool pool;
 
-        public Relationships(final Stream<Edge> relationships) {
-            this.relationships = relationships;
+        public Relationships(final Graph graph, final Stream<Edge> relationships) {
+            this(graph, QueryPlan.of(() -> relationships), null);
+        }
+
+        Relationships(final Graph graph, final QueryPlan plan, final ForkJoinPool pool) {
+            this.graph = graph;
+            this.plan = plan;
+            this.pool = pool;
         }
 
         public Nodes toNodes() {
-            return new Nodes(relationships.map(r -> r.target));
+            return new Nodes(graph, plan.endNodes(QueryPlan.End.TARGET), pool);
         }
 
         public Nodes toNodes(final String label) {
-            return new Nodes(relationships.filter(r -> r.target.label.equals(label)).map(r -> r.target));
+            return new Nodes(graph, plan.endNodes(QueryPlan.End.TARGET, graph.getLabel(label)), pool);
         }
 
         public Nodes fromNodes() {
-            return new Nodes(relationships.map(r -> r.source));
+            return new Nodes(graph, plan.endNodes(QueryPlan.End.SOURCE), pool);
         }
 
         public Nodes fromNodes(final String label) {
-            return new Nodes(relationships.filter(r -> r.source.label.equals(label)).map(r -> r.source));
+            return new Nodes(graph, plan.endNodes(QueryPlan.End.SOURCE, graph.getLabel(label)), pool);
         }
 
         public Relationships where(final Predicate<Edge> predicate) {
-            return new Relationships(relationships.filter(predicate));
+            return new Relationships(graph, plan.filter(predicate), pool);
+        }
+
+        /**
+         * Keeps the edges whose int property lies between from and to, both inclusive.
+         * Straight after {@link Query#relationships(String)}, a range index on the property is used if there is one,
+         * and the edges come in increasing order of the property.
+         */
+        public Relationships whereBetween(final String propertyName, final int from, final int to) {
+            return new Relationships(graph, plan.between(propertyName, from, to), pool);
+        }
+
+        /** Collects the edges, on the query's pool if it is parallel. */
+        @SuppressWarnings("unchecked")
+        public <R> R collect(final Collector<? super Edge, ?, R> collector) {
+            return execute(pool, () -> plan.compile(graph, pool).collect((Collector<Object, ?, R>) collector));
+        }
+
+        /** Returns the edges as a stream; in a parallel query, they are all reached before the stream is returned. */
+        @SuppressWarnings("unchecked")
+        public Stream<Edge> stream() {
+            return (Stream<Edge>) (Stream<?>) execute(pool, () -> plan.compile(graph, pool).stream());
         }
     }
 
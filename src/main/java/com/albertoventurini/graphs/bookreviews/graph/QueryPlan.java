@@ -0,0 +1,247 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Logical plan of a {@link Query}: where the traversal starts and the steps that follow, recorded as the fluent API
+ * is called. Plans are immutable, and each step returns a new plan sharing the steps before it.
+ *
+ * Nothing runs until a terminal operation compiles the plan into a {@link Traversal}. Compiling rewrites the plan:
+ * a range filter straight after a label scan becomes a scan of the range index, if there is one; a hop, the edge
+ * filters after it and the step to its end nodes, label check included, fuse into a single operator that loops over
+ * the node's adjacency for the edge label; consecutive filters merge into one operator; and a distinct step over
+ * nodes that are distinct already is dropped.
+ */
+final class QueryPlan {
+
+    enum Direction { OUTGOING, INCOMING }
+
+    enum End { SOURCE, TARGET }
+
+    private abstract static class Step {
+    }
+
+    /** All the nodes, or all the edges, with a label; matches nothing if the label is null */
+    private static class Scan extends Step {
+        final Label label;
+        final boolean edges;
+
+        Scan(final Label label, final boolean edges) {
+            this.label = label;
+            this.edges = edges;
+        }
+    }
+
+    /** Elements supplied by the caller */
+    private static class Elements extends Step {
+        final Supplier<Stream<?>> elements;
+
+        Elements(final Supplier<Stream<?>> elements) {
+            this.elements = elements;
+        }
+    }
+
+    /** From nodes to their edges with a label */
+    private static class Expand extends Step {
+        final Direction direction;
+        final Label edgeLabel;
+
+        Expand(final Direction direction, final Label edgeLabel) {
+            this.direction = direction;
+            this.edgeLabel = edgeLabel;
+        }
+    }
+
+    /** From edges to one of their end nodes, optionally only those with a given label */
+    private static class EndNodes extends Step {
+        final End end;
+        final Label nodeLabel;
+        final boolean anyLabel;
+
+        EndNodes(final End end, final Label nodeLabel, final boolean anyLabel) {
+            this.end = end;
+            this.nodeLabel = nodeLabel;
+            this.anyLabel = anyLabel;
+        }
+    }
+
+    private static class Filter extends Step {
+        final Predicate<Object> predicate;
+
+        Filter(final Predicate<Object> predicate) {
+            this.predicate = predicate;
+        }
+    }
+
+    private static class Between extends Step {
+        final String propertyName;
+        final int from;
+        final int to;
+
+        Between(final String propertyName, final int from, final int to) {
+            this.propertyName = propertyName;
+            this.from = from;
+            this.to = to;
+        }
+
+        Predicate<Object> predicate() {
+            return e -> ((GraphElement) e).isIntBetween(propertyName, from, to);
+        }
+    }
+
+    private static class Distinct extends Step {
+    }
+
+    private final QueryPlan previous;
+    private final Step step;
+
+    private QueryPlan(final QueryPlan previous, final Step step) {
+        this.previous = previous;
+        this.step = step;
+    }
+
+    static QueryPlan scanNodes(final Label label) {
+        return new QueryPlan(null, new Scan(label, false));
+    }
+
+    static QueryPlan scanEdges(final Label label) {
+        return new QueryPlan(null, new Scan(label, true));
+    }
+
+    /** Starts from the elements of the supplied streams; a supplier returning the same stream can be run once. */
+    static QueryPlan of(final Supplier<Stream<?>> elements) {
+        return new QueryPlan(null, new Elements(elements));
+    }
+
+    QueryPlan expand(final Direction direction, final Label edgeLabel) {
+        return new QueryPlan(this, new Expand(direction, edgeLabel));
+    }
+
+    QueryPlan endNodes(final End end) {
+        return new QueryPlan(this, new EndNodes(end, null, true));
+    }
+
+    /** Moves to the end nodes with the given label; a null label matches no nodes. */
+    QueryPlan endNodes(final End end, final Label nodeLabel) {
+        return new QueryPlan(this, new EndNodes(end, nodeLabel, false));
+    }
+
+    @SuppressWarnings("unchecked")
+    <T> QueryPlan filter(final Predicate<T> predicate) {
+        return new QueryPlan(this, new Filter((Predicate<Object>) predicate));
+    }
+
+    QueryPlan between(final String propertyName, final int from, final int to) {
+        return new QueryPlan(this, new Between(propertyName, from, to));
+    }
+
+    QueryPlan distinct() {
+        return new QueryPlan(this, new Distinct());
+    }
+
+    /** Compiles the plan into a traversal that runs sequentially, or on the given pool if not null. */
+    Traversal compile(final Graph graph, final ForkJoinPool pool) {
+        final List<Step> steps = steps();
+
+        int i = 1;
+        final Supplier<Stream<?>> source;
+        // Whether the elements reaching the current step are known to be distinct nodes
+        boolean distinct;
+
+        if (steps.get(0) instanceof Scan) {
+            final Scan scan = (Scan) steps.get(0);
+            final RangeIndex index = scan.label != null && i < steps.size() && steps.get(i) instanceof Between
+                    ? graph.rangeIndex(scan.label, ((Between) steps.get(i)).propertyName)
+                    : null;
+
+            if (scan.label == null) {
+                source = Stream::empty;
+            } else if (index != null) {
+                final Between between = (Between) steps.get(i++);
+                source = () -> index.between(between.from, between.to, scan.edges);
+            } else if (scan.edges) {
+                source = () -> graph.getEdgesByLabel(scan.label);
+            } else {
+                source = () -> graph.getNodesByLabel(scan.label).stream();
+            }
+            distinct = !scan.edges;
+        } else {
+            source = ((Elements) steps.get(0)).elements;
+            distinct = false;
+        }
+
+        final List<Traversal.Operator> operators = new ArrayList<>();
+        final List<Predicate<Object>> filters = new ArrayList<>();
+
+        while (i < steps.size()) {
+            final Step step = steps.get(i++);
+
+            if (isFilter(step)) {
+                filters.add(predicate(step));
+                continue;
+            }
+            if (!filters.isEmpty()) {
+                operators.add(new Traversal.Filter(filters));
+                filters.clear();
+            }
+
+            if (step instanceof Expand) {
+                final Expand expand = (Expand) step;
+
+                final List<Predicate<Object>> edgeFilters = new ArrayList<>();
+                while (i < steps.size() && isFilter(steps.get(i))) {
+                    edgeFilters.add(predicate(steps.get(i++)));
+                }
+
+                if (i < steps.size() && steps.get(i) instanceof EndNodes) {
+                    final EndNodes endNodes = (EndNodes) steps.get(i++);
+                    operators.add(new Traversal.Hop(
+                            expand.direction,
+                            expand.edgeLabel,
+                            edgeFilters,
+                            endNodes.end,
+                            endNodes.nodeLabel,
+                            endNodes.anyLabel));
+                } else {
+                    operators.add(new Traversal.Hop(expand.direction, expand.edgeLabel, edgeFilters, null, null, true));
+                }
+                distinct = false;
+            } else if (step instanceof EndNodes) {
+                final EndNodes endNodes = (EndNodes) step;
+                operators.add(new Traversal.EndNodes(endNodes.end, endNodes.nodeLabel, endNodes.anyLabel));
+                distinct = false;
+            } else if (step instanceof Distinct && !distinct) {
+                operators.add(new Traversal.Distinct(graph.getNodes().size(), pool != null));
+                distinct = true;
+            }
+        }
+        if (!filters.isEmpty()) {
+            operators.add(new Traversal.Filter(filters));
+        }
+
+        return new Traversal(source, operators, pool);
+    }
+
+    private List<Step> steps() {
+        final List<Step> steps = new ArrayList<>();
+        for (QueryPlan plan = this; plan != null; plan = plan.previous) {
+            steps.add(plan.step);
+        }
+        Collections.reverse(steps);
+        return steps;
+    }
+
+    private static boolean isFilter(final Step step) {
+        return step instanceof Filter || step instanceof Between;
+    }
+
+    private static Predicate<Object> predicate(final Step step) {
+        return step instanceof Filter ? ((Filter) step).predicate : ((Between) step).predicate();
+    }
+}
@@ -0,0 +1,135 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Sorted index on an int property of the nodes and edges sharing a label, answering range queries by binary search.
+ * Each entry is kept in parallel int arrays sorted by value, then by ordinal: the value, the ordinal, and the index
+ * of the node, or of the source and target nodes of the edge. No element is held by the index; a query makes the
+ * nodes and edge views of the matching entries only, as it streams them.
+ * Sorted arrays are expensive to update in place, so a write to the property only marks the index as stale,
+ * and the arrays are rebuilt in bulk by the next query.
+ */
+class RangeIndex {
+
+    /** Entries of the index, replaced as a whole on rebuild so that queries in flight keep a consistent view */
+    private static final class Entries {
+        final int[] values;
+        final int[] ordinals;
+        /** Index of each node, or of the source node of each edge */
+        final int[] sources;
+        /** Index of the target node of each edge, or -1 for a node */
+        final int[] targets;
+
+        Entries(final int count) {
+            values = new int[count];
+            ordinals = new int[count];
+            sources = new int[count];
+            targets = new int[count];
+        }
+    }
+
+    private final Graph graph;
+    private final Label label;
+    private final String propertyName;
+
+    private boolean stale = true;
+    private Entries entries;
+
+    RangeIndex(final Graph graph, final Label label, final String propertyName) {
+        this.graph = graph;
+        this.label = label;
+        this.propertyName = propertyName;
+    }
+
+    synchronized void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * Returns the edges, or the nodes, whose value lies between from and to, both inclusive, in increasing order
+     * of value.
+     */
+    Stream<GraphElement> between(final int from, final int to, final boolean edges) {
+        final Entries entries;
+        synchronized (this) {
+            if (stale) {
+                this.entries = rebuild();
+                stale = false;
+            }
+            entries = this.entries;
+        }
+
+        if (from > to) {
+            return Stream.empty();
+        }
+
+        final List<Node> nodes = graph.getNodes();
+        return IntStream.range(firstAtLeast(entries.values, from), firstAbove(entries.values, to))
+                .filter(i -> entries.targets[i] >= 0 == edges)
+                .mapToObj(i -> entries.targets[i] < 0
+                        ? nodes.get(entries.sources[i])
+                        : new Edge(graph, label, entries.ordinals[i],
+                                nodes.get(entries.sources[i]), nodes.get(entries.targets[i])));
+    }
+
+    private Entries rebuild() {
+        final PropertyTable table = graph.propertyTable(label);
+        final IntColumn column = table.intColumn(propertyName);
+
+        final int[] sourceByOrdinal = new int[table.size()];
+        final int[] targetByOrdinal = new int[table.size()];
+        Arrays.fill(sourceByOrdinal, -1);
+        graph.getElementsByLabel(label).forEach(e -> {
+            if (e instanceof Edge) {
+                sourceByOrdinal[e.ordinal] = ((Edge) e).source.index;
+                targetByOrdinal[e.ordinal] = ((Edge) e).target.index;
+            } else {
+                sourceByOrdinal[e.ordinal] = ((Node) e).index;
+                targetByOrdinal[e.ordinal] = -1;
+            }
+        });
+
+        // Each key packs a value in its high half and an ordinal in its low half, so that a primitive sort
+        // orders the elements by value, then by ordinal.
+        final long[] keys = new long[sourceByOrdinal.length];
+        int count = 0;
+        for (int ordinal = 0; ordinal < sourceByOrdinal.length; ordinal++) {
+            if (sourceByOrdinal[ordinal] >= 0 && column.isSet(ordinal)) {
+                keys[count++] = ((long) column.getInt(ordinal) << 32) | ordinal;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+
+        final Entries entries = new Entries(count);
+        for (int i = 0; i < count; i++) {
+            final int ordinal = (int) keys[i];
+            entries.values[i] = (int) (keys[i] >> 32);
+            entries.ordinals[i] = ordinal;
+            entries.sources[i] = sourceByOrdinal[ordinal];
+            entries.targets[i] = targetByOrdinal[ordinal];
+        }
+        return entries;
+    }
+
+    private static int firstAtLeast(final int[] values, final int value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (values[middle] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int firstAbove(final int[] values, final int value) {
+        return value == Integer.MAX_VALUE ? values.length : firstAtLeast(values, value + 1);
+    }
+}
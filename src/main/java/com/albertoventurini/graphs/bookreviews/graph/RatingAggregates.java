@@ -0,0 +1,57 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.Arrays;
+
+/**
+ * Running count, sum, minimum and maximum of the ratings attributed to each node, indexed by {@link Node#index}.
+ * Nodes without ratings have a count of 0; their minimum and maximum are undefined and reported as 0.
+ */
+class RatingAggregates {
+
+    private int[] counts = new int[16];
+    private long[] sums = new long[16];
+    private int[] minimums = new int[16];
+    private int[] maximums = new int[16];
+
+    void add(final int index, final int rating) {
+        if (index >= counts.length) {
+            final int length = Math.max(index + 1, counts.length * 2);
+            counts = Arrays.copyOf(counts, length);
+            sums = Arrays.copyOf(sums, length);
+            minimums = Arrays.copyOf(minimums, length);
+            maximums = Arrays.copyOf(maximums, length);
+        }
+
+        if (counts[index] == 0) {
+            minimums[index] = rating;
+            maximums[index] = rating;
+        } else {
+            minimums[index] = Math.min(minimums[index], rating);
+            maximums[index] = Math.max(maximums[index], rating);
+        }
+        counts[index]++;
+        sums[index] += rating;
+    }
+
+    int count(final int index) {
+        return index < counts.length ? counts[index] : 0;
+    }
+
+    long sum(final int index) {
+        return index < sums.length ? sums[index] : 0;
+    }
+
+    int min(final int index) {
+        return index < minimums.length ? minimums[index] : 0;
+    }
+
+    int max(final int index) {
+        return index < maximums.length ? maximums[index] : 0;
+    }
+
+    /** Average rating, or 0 if the node has no ratings. */
+    double average(final int index) {
+        final int count = count(index);
+        return count == 0 ? 0.0 : (double) sum(index) / count;
+    }
+}
@@ -0,0 +1,97 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * A bounded, single-producer single-consumer channel of records.
+ * Records are moved across in batches, so that the queue is touched once per batch rather than once per record.
+ * The producer blocks when the consumer falls more than {@code capacity} batches behind.
+ */
+class RecordPipe<T> implements Consumer<T> {
+
+    private static final Object END = new Object();
+
+    private static class Failure {
+        final Throwable cause;
+
+        Failure(final Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final BlockingQueue<Object> queue;
+    private final int batchSize;
+    private List<T> batch;
+
+    RecordPipe(final int capacity, final int batchSize) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /** Producer side: adds a record, blocking if the pipe is full. */
+    @Override
+    public void accept(final T record) {
+        batch.add(record);
+        if (batch.size() == batchSize) {
+            put(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    /** Producer side: flushes the pending batch and signals that no more records will follow. */
+    void close() {
+        if (!batch.isEmpty()) {
+            put(batch);
+        }
+        put(END);
+    }
+
+    /** Producer side: signals that the producer failed, so that the consumer can stop. */
+    void fail(final Throwable cause) {
+        try {
+            queue.put(new Failure(cause));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Consumer side: passes every record to the given consumer until the producer closes the pipe.
+     * If the producer failed, its exception is rethrown.
+     */
+    @SuppressWarnings("unchecked")
+    void drain(final Consumer<T> consumer) throws InterruptedException {
+        while (true) {
+            final Object item = queue.take();
+
+            if (item == END) {
+                return;
+            } else if (item instanceof Failure) {
+                final Throwable cause = ((Failure) item).cause;
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+
+            ((List<T>) item).forEach(consumer);
+        }
+    }
+
+    private void put(final Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Pipe consumer has stopped");
+        }
+    }
+}
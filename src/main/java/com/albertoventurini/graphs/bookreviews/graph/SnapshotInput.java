@@ -0,0 +1,153 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import com.albertoventurini.graphs.bookreviews.graph.exceptions.InvalidSnapshotException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Sequential reader over a memory-mapped snapshot, in the big-endian order a {@link java.io.DataOutputStream}
+ * writes. Files larger than a single {@link MappedByteBuffer} can address are mapped as consecutive segments, and
+ * arrays are copied out of a segment in bulk, so only a value that straddles two segments is read byte by byte.
+ */
+class SnapshotInput {
+
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+    private static final long SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+    private long position = 0;
+
+    private SnapshotInput(final MappedByteBuffer[] segments, final long size) {
+        this.segments = segments;
+        this.size = size;
+    }
+
+    static SnapshotInput map(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+
+            for (int i = 0; i < segments.length; i++) {
+                final long offset = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(SEGMENT_SIZE, size - offset));
+            }
+
+            return new SnapshotInput(segments, size);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /** Number of bytes left to read. */
+    long remaining() {
+        return size - position;
+    }
+
+    /** Returns the CRC32 of the bytes left to read, without moving the position. */
+    long checksum() {
+        final CRC32 checksum = new CRC32();
+        for (int i = (int) (position >>> SEGMENT_SHIFT); i < segments.length; i++) {
+            final ByteBuffer segment = segments[i].duplicate();
+            if (i == (int) (position >>> SEGMENT_SHIFT)) {
+                segment.position((int) (position & SEGMENT_MASK));
+            }
+            checksum.update(segment);
+        }
+        return checksum.getValue();
+    }
+
+    byte get() {
+        final byte value = segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK));
+        position++;
+        return value;
+    }
+
+    int getInt() {
+        if (fits(Integer.BYTES)) {
+            final int value = segments[(int) (position >>> SEGMENT_SHIFT)].getInt((int) (position & SEGMENT_MASK));
+            position += Integer.BYTES;
+            return value;
+        }
+        return (get() & 0xff) << 24 | (get() & 0xff) << 16 | (get() & 0xff) << 8 | (get() & 0xff);
+    }
+
+    long getLong() {
+        if (fits(Long.BYTES)) {
+            final long value = segments[(int) (position >>> SEGMENT_SHIFT)].getLong((int) (position & SEGMENT_MASK));
+            position += Long.BYTES;
+            return value;
+        }
+        return (long) getInt() << 32 | (getInt() & 0xFFFFFFFFL);
+    }
+
+    String getString() {
+        final byte[] bytes = new byte[getInt()];
+        for (int i = 0; i < bytes.length; ) {
+            final int count = (int) Math.min(bytes.length - i, bytesLeftInSegment());
+            segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & SEGMENT_MASK), bytes, i, count);
+            position += count;
+            i += count;
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /** Reads the given number of ints into the target array, starting at the given offset. */
+    void getInts(final int[] target, final int offset, final int count) {
+        for (int i = offset; i < offset + count; ) {
+            final int bulk = (int) Math.min(offset + count - i, bytesLeftInSegment() / Integer.BYTES);
+            if (bulk > 0) {
+                segmentAtPosition().asIntBuffer().get(target, i, bulk);
+                position += (long) bulk * Integer.BYTES;
+                i += bulk;
+            } else {
+                target[i++] = getInt();
+            }
+        }
+    }
+
+    /** Reads the given number of longs into the target array, starting at the given offset. */
+    void getLongs(final long[] target, final int offset, final int count) {
+        for (int i = offset; i < offset + count; ) {
+            final int bulk = (int) Math.min(offset + count - i, bytesLeftInSegment() / Long.BYTES);
+            if (bulk > 0) {
+                segmentAtPosition().asLongBuffer().get(target, i, bulk);
+                position += (long) bulk * Long.BYTES;
+                i += bulk;
+            } else {
+                target[i++] = getLong();
+            }
+        }
+    }
+
+    void skip(final long bytes) {
+        if (bytes < 0 || bytes > remaining()) {
+            throw new InvalidSnapshotException("Cannot skip " + bytes + " bytes");
+        }
+        position += bytes;
+    }
+
+    private boolean fits(final int bytes) {
+        return bytesLeftInSegment() >= bytes;
+    }
+
+    private long bytesLeftInSegment() {
+        return Math.min(SEGMENT_SIZE - (position & SEGMENT_MASK), size - position);
+    }
+
+    /** The current segment, positioned at the read position. */
+    private ByteBuffer segmentAtPosition() {
+        return segments[(int) (position >>> SEGMENT_SHIFT)].duplicate().position((int) (position & SEGMENT_MASK));
+    }
+}
@@ -0,0 +1,140 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * Selects the k first elements of an array of ints in a given order, without sorting the whole array.
+ * The array is split into partitions that are scanned in parallel, each keeping its k best elements in a bounded
+ * heap; the partial results are then merged the same way. The order must be total for the result to be
+ * deterministic.
+ */
+class TopK {
+
+    private static final int MIN_PARTITION_SIZE = 1 << 12;
+
+    /** Order over ints, such as node indexes ranked by a score. */
+    @FunctionalInterface
+    interface IntOrder {
+        /** Negative if a comes before b, positive if after. */
+        int compare(int a, int b);
+
+        /** This order, with ties broken by the given one. */
+        default IntOrder thenComparing(final IntOrder next) {
+            return (a, b) -> {
+                final int result = compare(a, b);
+                return result != 0 ? result : next.compare(a, b);
+            };
+        }
+    }
+
+    /** @return at most k elements of the given array, in order */
+    static int[] select(final int[] elements, final int k, final IntOrder order) {
+        if (k <= 0) {
+            return new int[0];
+        }
+
+        final int partitions = Math.max(1, Math.min(
+                ForkJoinPool.getCommonPoolParallelism(),
+                elements.length / MIN_PARTITION_SIZE));
+
+        if (partitions == 1) {
+            return select(elements, 0, elements.length, k, order);
+        }
+
+        final int[] candidates = IntStream.range(0, partitions)
+                .parallel()
+                .mapToObj(p -> select(
+                        elements,
+                        (int) ((long) elements.length * p / partitions),
+                        (int) ((long) elements.length * (p + 1) / partitions),
+                        k,
+                        order))
+                .flatMapToInt(Arrays::stream)
+                .toArray();
+
+        return select(candidates, 0, candidates.length, k, order);
+    }
+
+    private static int[] select(final int[] elements, final int from, final int to, final int k, final IntOrder order) {
+        final BoundedHeap heap = new BoundedHeap(Math.min(k, to - from), order);
+        for (int i = from; i < to; i++) {
+            heap.offer(elements[i]);
+        }
+        return heap.drainInOrder();
+    }
+
+    /** Heap holding the best elements offered so far, with the worst of them at the root. */
+    private static class BoundedHeap {
+
+        private final int[] heap;
+        private final IntOrder order;
+        private int size = 0;
+
+        BoundedHeap(final int capacity, final IntOrder order) {
+            this.heap = new int[capacity];
+            this.order = order;
+        }
+
+        void offer(final int element) {
+            if (size < heap.length) {
+                heap[size] = element;
+                siftUp(size++);
+            } else if (size > 0 && order.compare(element, heap[0]) < 0) {
+                heap[0] = element;
+                siftDown(0);
+            }
+        }
+
+        /** Empties the heap, returning its elements from best to worst. */
+        int[] drainInOrder() {
+            final int[] result = new int[size];
+            while (size > 0) {
+                result[size - 1] = heap[0];
+                heap[0] = heap[--size];
+                siftDown(0);
+            }
+            return result;
+        }
+
+        private void siftUp(final int start) {
+            int i = start;
+            while (i > 0) {
+                final int parent = (i - 1) / 2;
+                if (!worse(heap[i], heap[parent])) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(final int start) {
+            int i = start;
+            while (true) {
+                final int left = 2 * i + 1;
+                if (left >= size) {
+                    return;
+                }
+                final int right = left + 1;
+                final int worst = right < size && worse(heap[right], heap[left]) ? right : left;
+                if (!worse(heap[worst], heap[i])) {
+                    return;
+                }
+                swap(i, worst);
+                i = worst;
+            }
+        }
+
+        private boolean worse(final int a, final int b) {
+            return order.compare(a, b) > 0;
+        }
+
+        private void swap(final int i, final int j) {
+            final int element = heap[i];
+            heap[i] = heap[j];
+            heap[j] = element;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/** Stores the edges of a graph and answers adjacency lookups for its nodes. */
+interface Topology {
+
+    void addEdge(Edge edge);
+
+    Stream<Edge> outgoingEdges(Node node);
+
+    Stream<Edge> outgoingEdges(Node node, Label edgeLabel);
+
+    Stream<Edge> incomingEdges(Node node);
+
+    Stream<Edge> incomingEdges(Node node, Label edgeLabel);
+
+    /** Passes the outgoing edges with the given label to the action, without setting up a stream. */
+    void forEachOutgoingEdge(Node node, Label edgeLabel, Consumer<Edge> action);
+
+    /** Passes the incoming edges with the given label to the action, without setting up a stream. */
+    void forEachIncomingEdge(Node node, Label edgeLabel, Consumer<Edge> action);
+}
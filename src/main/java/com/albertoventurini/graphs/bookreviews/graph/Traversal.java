@@ -0,0 +1,348 @@
+package com.albertoventurini.graphs.bookreviews.graph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compiled form of a {@link QueryPlan}: a source of elements and a chain of operators, each pushing the elements it
+ * produces straight into the next one. A hop costs one loop over the adjacency of each node, with no stream set up
+ * per node as a flatMap would.
+ *
+ * A parallel traversal gathers the frontier into an array before each operator that fans out, and splits the array
+ * evenly across the pool, since a hop can turn a handful of nodes into millions of edges.
+ */
+class Traversal {
+
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    abstract static class Operator {
+
+        /** Whether the operator can turn one element into many. */
+        boolean fansOut() {
+            return false;
+        }
+
+        /** Returns a consumer that applies this operator to each element and passes on the results. */
+        abstract Consumer<Object> wrap(Consumer<Object> downstream);
+    }
+
+    static class Filter extends Operator {
+        private final Predicate<Object> predicate;
+
+        Filter(final List<Predicate<Object>> predicates) {
+            this.predicate = allOf(predicates);
+        }
+
+        @Override
+        Consumer<Object> wrap(final Consumer<Object> downstream) {
+            return e -> {
+                if (predicate.test(e)) {
+                    downstream.accept(e);
+                }
+            };
+        }
+    }
+
+    /** From nodes to their edges with a label, or to the nodes at the other end of those edges */
+    static class Hop extends Operator {
+        private final QueryPlan.Direction direction;
+        private final Label edgeLabel;
+        private final Predicate<Object> edgeFilter;
+        private final EndNodes endNodes;
+
+        /** @param end the end nodes to move to, or null to yield the edges themselves */
+        Hop(
+                final QueryPlan.Direction direction,
+                final Label edgeLabel,
+                final List<Predicate<Object>> edgeFilters,
+                final QueryPlan.End end,
+                final Label nodeLabel,
+                final boolean anyLabel) {
+
+            this.direction = direction;
+            this.edgeLabel = edgeLabel;
+            this.edgeFilter = edgeFilters.isEmpty() ? null : allOf(edgeFilters);
+            this.endNodes = end == null ? null : new EndNodes(end, nodeLabel, anyLabel);
+        }
+
+        @Override
+        boolean fansOut() {
+            return true;
+        }
+
+        @Override
+        Consumer<Object> wrap(final Consumer<Object> downstream) {
+            final Consumer<Object> toEnds = endNodes == null ? downstream : endNodes.wrap(downstream);
+            final Consumer<Edge> edges = edgeFilter == null
+                    ? toEnds::accept
+                    : e -> {
+                        if (edgeFilter.test(e)) {
+                            toEnds.accept(e);
+                        }
+                    };
+
+            return direction == QueryPlan.Direction.OUTGOING
+                    ? n -> ((Node) n).forEachOutgoingEdge(edgeLabel, edges)
+                    : n -> ((Node) n).forEachIncomingEdge(edgeLabel, edges);
+        }
+    }
+
+    /** From edges to one of their end nodes */
+    static class EndNodes extends Operator {
+        private final QueryPlan.End end;
+        private final Label nodeLabel;
+        private final boolean anyLabel;
+
+        EndNodes(final QueryPlan.End end, final Label nodeLabel, final boolean anyLabel) {
+            this.end = end;
+            this.nodeLabel = nodeLabel;
+            this.anyLabel = anyLabel;
+        }
+
+        @Override
+        Consumer<Object> wrap(final Consumer<Object> downstream) {
+            if (end == QueryPlan.End.TARGET) {
+                return anyLabel
+                        ? e -> downstream.accept(((Edge) e).target)
+                        : e -> {
+                            final Node target = ((Edge) e).target;
+                            if (target.label == nodeLabel) {
+                                downstream.accept(target);
+                            }
+                        };
+            }
+            return anyLabel
+                    ? e -> downstream.accept(((Edge) e).source)
+                    : e -> {
+                        final Node source = ((Edge) e).source;
+                        if (source.label == nodeLabel) {
+                            downstream.accept(source);
+                        }
+                    };
+        }
+    }
+
+    /** Drops the nodes already seen by this traversal, marking them in a bit set over {@link Node#index}. */
+    static class Distinct extends Operator {
+        private final Predicate<Node> firstVisit;
+
+        Distinct(final int nodeCount, final boolean concurrent) {
+            if (concurrent) {
+                final AtomicBitSet visited = new AtomicBitSet(nodeCount);
+                firstVisit = n -> visited.add(n.index);
+            } else {
+                final BitSet visited = new BitSet(nodeCount);
+                firstVisit = n -> {
+                    if (visited.get(n.index)) {
+                        return false;
+                    }
+                    visited.set(n.index);
+                    return true;
+                };
+            }
+        }
+
+        @Override
+        Consumer<Object> wrap(final Consumer<Object> downstream) {
+            return n -> {
+                if (firstVisit.test((Node) n)) {
+                    downstream.accept(n);
+                }
+            };
+        }
+    }
+
+    private final Supplier<Stream<?>> source;
+    private final List<Operator> operators;
+
+    /** Pool on which the traversal runs, or null for a sequential traversal */
+    private final ForkJoinPool pool;
+
+    Traversal(final Supplier<Stream<?>> source, final List<Operator> operators, final ForkJoinPool pool) {
+        this.source = source;
+        this.operators = operators;
+        this.pool = pool;
+    }
+
+    /** Runs the traversal to completion. A parallel traversal must be run from a task of its pool. */
+    @SuppressWarnings("unchecked")
+    <A, R> R collect(final Collector<Object, A, R> collector) {
+        final BiConsumer<A, Object> accumulator = collector.accumulator();
+        final A result;
+
+        if (pool == null) {
+            result = collector.supplier().get();
+            source.get().sequential().forEach(chain(operators, e -> accumulator.accept(result, e)));
+        } else {
+            final List<List<Operator>> segments = segments();
+            Object[] frontier = source.get().toArray();
+            for (final List<Operator> segment : segments.subList(0, segments.size() - 1)) {
+                frontier = gather(frontier, segment);
+            }
+            result = runInChunks(frontier, segments.get(segments.size() - 1), collector.supplier(), accumulator)
+                    .stream()
+                    .reduce(collector.combiner())
+                    .orElseGet(collector.supplier());
+        }
+
+        return collector.characteristics().contains(Collector.Characteristics.IDENTITY_FINISH)
+                ? (R) result
+                : collector.finisher().apply(result);
+    }
+
+    /**
+     * Returns the results as a stream. A sequential traversal runs lazily, as the stream is consumed; a parallel
+     * one runs to completion first, and must be started from a task of its pool.
+     */
+    Stream<Object> stream() {
+        if (pool == null) {
+            return StreamSupport.stream(new PushSpliterator(source.get().sequential().spliterator(), operators), false);
+        }
+
+        Object[] results = source.get().toArray();
+        for (final List<Operator> segment : segments()) {
+            results = gather(results, segment);
+        }
+        return Arrays.stream(results).parallel();
+    }
+
+    /** Splits the operators before each one that fans out, except the first, whose input is the source. */
+    private List<List<Operator>> segments() {
+        final List<List<Operator>> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 1; i < operators.size(); i++) {
+            if (operators.get(i).fansOut()) {
+                segments.add(operators.subList(start, i));
+                start = i;
+            }
+        }
+        segments.add(operators.subList(start, operators.size()));
+        return segments;
+    }
+
+    private Object[] gather(final Object[] elements, final List<Operator> segment) {
+        return runInChunks(elements, segment, ArrayList::new, List::add)
+                .stream()
+                .flatMap(List::stream)
+                .toArray();
+    }
+
+    /** Pushes the elements through the operators in parallel chunks, accumulating each chunk's results apart. */
+    private <A> List<A> runInChunks(
+            final Object[] elements,
+            final List<Operator> segment,
+            final Supplier<A> supplier,
+            final BiConsumer<A, Object> accumulator) {
+
+        final int chunks = Math.max(1, Math.min(elements.length, pool.getParallelism() * CHUNKS_PER_THREAD));
+
+        final List<A> results = new ArrayList<>(chunks);
+        IntStream.range(0, chunks)
+                .parallel()
+                .mapToObj(chunk -> {
+                    final A result = supplier.get();
+                    final Consumer<Object> sink = chain(segment, e -> accumulator.accept(result, e));
+                    final int from = (int) ((long) elements.length * chunk / chunks);
+                    final int to = (int) ((long) elements.length * (chunk + 1) / chunks);
+                    for (int i = from; i < to; i++) {
+                        sink.accept(elements[i]);
+                    }
+                    return result;
+                })
+                .forEachOrdered(results::add);
+        return results;
+    }
+
+    private static Consumer<Object> chain(final List<Operator> operators, final Consumer<Object> downstream) {
+        Consumer<Object> sink = downstream;
+        for (int i = operators.size() - 1; i >= 0; i--) {
+            sink = operators.get(i).wrap(sink);
+        }
+        return sink;
+    }
+
+    private static Predicate<Object> allOf(final List<Predicate<Object>> predicates) {
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+
+        final Predicate<Object>[] all = predicates.toArray(newPredicates(predicates.size()));
+        return e -> {
+            for (final Predicate<Object> predicate : all) {
+                if (!predicate.test(e)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Predicate<Object>[] newPredicates(final int size) {
+        return (Predicate<Object>[]) new Predicate[size];
+    }
+
+    /**
+     * Spliterator pulling one source element at a time through the operators, and buffering whatever comes out,
+     * so that the traversal advances only as far as the consumer of the stream asks.
+     */
+    private static class PushSpliterator implements Spliterator<Object> {
+        private final Spliterator<?> source;
+        private final List<Operator> operators;
+        private final ArrayDeque<Object> buffer = new ArrayDeque<>();
+        private final Consumer<Object> buffering;
+
+        PushSpliterator(final Spliterator<?> source, final List<Operator> operators) {
+            this.source = source;
+            this.operators = operators;
+            this.buffering = chain(operators, buffer::add);
+        }
+
+        @Override
+        public boolean tryAdvance(final Consumer<? super Object> action) {
+            while (buffer.isEmpty()) {
+                if (!source.tryAdvance(buffering)) {
+                    return false;
+                }
+            }
+            action.accept(buffer.poll());
+            return true;
+        }
+
+        @Override
+        public void forEachRemaining(final Consumer<? super Object> action) {
+            while (!buffer.isEmpty()) {
+                action.accept(buffer.poll());
+            }
+            source.forEachRemaining(chain(operators, action::accept));
+        }
+
+        @Override
+        public Spliterator<Object> trySplit() {
+            return null;
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return 0;
+        }
+    }
+}
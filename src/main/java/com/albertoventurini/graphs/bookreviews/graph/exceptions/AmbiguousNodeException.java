@@ -0,0 +1,8 @@
+package com.albertoventurini.graphs.bookreviews.graph.exceptions;
+
+public class AmbiguousNodeException extends RuntimeException {
+
+    public AmbiguousNodeException(final String nodeId) {
+        super("Nodes with more than one label have id: " + nodeId);
+    }
+}
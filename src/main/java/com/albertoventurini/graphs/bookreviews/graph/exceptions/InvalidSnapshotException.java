@@ -0,0 +1,8 @@
+package com.albertoventurini.graphs.bookreviews.graph.exceptions;
+
+public class InvalidSnapshotException extends RuntimeException {
+
+    public InvalidSnapshotException(final String message) {
+        super(message);
+    }
+}